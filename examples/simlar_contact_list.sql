@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS simlar_contact_list (
+    `simlarId` varchar(64) NOT NULL,
+    `version` int(10) unsigned NOT NULL,
+    `hash` varchar(64) NOT NULL,
+    `contacts` mediumtext NOT NULL,
+    `registered` mediumtext NOT NULL,
+    `timestamp` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (`simlarId`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
@@ -0,0 +1,6 @@
+CREATE TABLE IF NOT EXISTS simlar_scheduler_lock (
+    `name` varchar(64) NOT NULL,
+    `lockedUntil` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    `lockedBy` varchar(255) NOT NULL,
+    PRIMARY KEY (`name`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
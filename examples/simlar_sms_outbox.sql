@@ -0,0 +1,15 @@
+CREATE TABLE IF NOT EXISTS simlar_sms_outbox (
+    `id` bigint(20) NOT NULL AUTO_INCREMENT,
+    `idempotencyKey` varchar(64) NOT NULL,
+    `provider` varchar(64) NOT NULL,
+    `type` varchar(64) NOT NULL,
+    `telephoneNumber` varchar(64) NOT NULL,
+    `message` varchar(1024) NOT NULL,
+    `status` varchar(64) NOT NULL,
+    `attempts` int(10) unsigned NOT NULL,
+    `created` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    `nextAttempt` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `outbox_idempotency_key` (`idempotencyKey`),
+    KEY `outbox_due` (`status`, `nextAttempt`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
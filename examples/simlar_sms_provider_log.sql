@@ -8,5 +8,7 @@ CREATE TABLE IF NOT EXISTS simlar_sms_provider_log (
     `status` varchar(64) DEFAULT NULL,
     `error` varchar(64) DEFAULT NULL,
     `message` varchar(170) DEFAULT NULL,
-    PRIMARY KEY (`id`)
+    PRIMARY KEY (`id`),
+    KEY `sms_provider_log_session_id` (`sessionId`),
+    KEY `sms_provider_log_timestamp` (`timestamp`)
 ) ENGINE=InnoDB DEFAULT CHARSET=latin1;
@@ -0,0 +1,20 @@
+-- Optional: partition simlar_sms_provider_log by month, e.g. to drop whole months once they have been exported.
+-- The retention's batched deletes work with and without partitions.
+-- MySQL requires the partitioning column in every unique key, so it becomes part of the primary key.
+ALTER TABLE simlar_sms_provider_log DROP PRIMARY KEY, ADD PRIMARY KEY (`id`, `timestamp`);
+
+ALTER TABLE simlar_sms_provider_log PARTITION BY RANGE (UNIX_TIMESTAMP(`timestamp`)) (
+    PARTITION p2026_10 VALUES LESS THAN (UNIX_TIMESTAMP('2026-11-01 00:00:00')),
+    PARTITION p2026_11 VALUES LESS THAN (UNIX_TIMESTAMP('2026-12-01 00:00:00')),
+    PARTITION p2026_12 VALUES LESS THAN (UNIX_TIMESTAMP('2027-01-01 00:00:00')),
+    PARTITION pmax VALUES LESS THAN MAXVALUE
+);
+
+-- Add a partition for the next month before it starts.
+ALTER TABLE simlar_sms_provider_log REORGANIZE PARTITION pmax INTO (
+    PARTITION p2027_01 VALUES LESS THAN (UNIX_TIMESTAMP('2027-02-01 00:00:00')),
+    PARTITION pmax VALUES LESS THAN MAXVALUE
+);
+
+-- Drop a month older than sms.provider.log.retention.maxAge instead of waiting for the batched deletes.
+-- ALTER TABLE simlar_sms_provider_log DROP PARTITION p2026_10;
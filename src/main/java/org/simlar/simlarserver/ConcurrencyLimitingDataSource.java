@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the number of connections handed out concurrently.
+ * <p>
+ * With virtual threads, request handling is no longer bounded by the servlet container's thread pool.
+ * So many threads may wait for a database connection. They queue fairly on a semaphore sized to the
+ * connection pool instead of inside the pool.
+ */
+@Slf4j
+final class ConcurrencyLimitingDataSource extends DelegatingDataSource {
+    private final Semaphore semaphore;
+    private final Duration acquireTimeout;
+
+    @FunctionalInterface
+    private interface ConnectionSupplier {
+        Connection get() throws SQLException;
+    }
+
+    private final class ReleasingInvocationHandler implements InvocationHandler {
+        private final Connection connection;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingInvocationHandler(final Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "close":
+                    try {
+                        connection.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            semaphore.release();
+                        }
+                    }
+                    return null;
+                default:
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (final InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    ConcurrencyLimitingDataSource(final DataSource targetDataSource, final int permits, final Duration acquireTimeout, final MeterRegistry meterRegistry) {
+        super(targetDataSource);
+        semaphore = new Semaphore(permits, true);
+        this.acquireTimeout = acquireTimeout;
+
+        Gauge.builder("simlar.database.permits.available", semaphore, Semaphore::availablePermits)
+                .description("database connections which may still be handed out")
+                .register(meterRegistry);
+        Gauge.builder("simlar.database.permits.waiting", semaphore, Semaphore::getQueueLength)
+                .description("threads waiting for a database connection")
+                .register(meterRegistry);
+
+        log.info("limiting concurrent database connections to '{}'", permits);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return limit(super::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        return limit(() -> super.getConnection(username, password));
+    }
+
+    private Connection limit(final ConnectionSupplier connectionSupplier) throws SQLException {
+        try {
+            if (!semaphore.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("no database connection available within " + acquireTimeout);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            final Connection connection = connectionSupplier.get();
+            return (Connection) Proxy.newProxyInstance(ConcurrencyLimitingDataSource.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new ReleasingInvocationHandler(connection));
+        } catch (final SQLException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+import org.springframework.scheduling.support.TaskUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+
+/**
+ * A {@link TaskScheduler} based on a hashed timing wheel.
+ * <p>
+ * Scheduling and cancelling a task is O(1), independent of the number of pending tasks.
+ * A single thread advances the wheel every tick and hands due tasks over to the executor.
+ * So tasks run at most one tick late, but never early.
+ */
+@Slf4j
+final class HashedWheelTaskScheduler implements TaskScheduler, DisposableBean {
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final Clock clock = Clock.systemDefaultZone();
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<WheelTask> addedTasks = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTask> cancelledTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final ExecutorService executor;
+    private final Timer latenessTimer;
+    private final Timer executionTimer;
+    private final long startNanos;
+    private final Thread wheelThread;
+    private volatile boolean running = true;
+
+    /**
+     * A doubly linked list of tasks, only accessed by the wheel thread.
+     */
+    private static final class Bucket {
+        private WheelTask head;
+        private WheelTask tail;
+
+        void add(final WheelTask task) {
+            task.bucket = this;
+            if (tail == null) {
+                head = task;
+            } else {
+                tail.next = task;
+                task.prev = tail;
+            }
+            tail = task;
+        }
+
+        WheelTask remove(final WheelTask task) {
+            final WheelTask next = task.next;
+            if (task.prev == null) {
+                head = next;
+            } else {
+                task.prev.next = next;
+            }
+            if (next == null) {
+                tail = task.prev;
+            } else {
+                next.prev = task.prev;
+            }
+
+            task.prev = null;
+            task.next = null;
+            task.bucket = null;
+            return next;
+        }
+    }
+
+    @SuppressFBWarnings("EQ_COMPARETO_USE_OBJECT_EQUALS")
+    private final class WheelTask extends FutureTask<Void> implements ScheduledFuture<Void> {
+        /// calculates the next execution from the scheduled and the actual execution, null for one-shot tasks
+        private final BinaryOperator<Instant> reschedule;
+        private volatile Instant scheduledTime;
+        private volatile long deadlineNanos;
+
+        // only accessed by the wheel thread
+        private long remainingRounds;
+        private WheelTask prev;
+        private WheelTask next;
+        private Bucket bucket;
+
+        WheelTask(final Runnable task, final Instant time, final BinaryOperator<Instant> reschedule) {
+            super(TaskUtils.decorateTaskWithErrorHandler(task, null, reschedule != null), null);
+            this.reschedule = reschedule;
+            setScheduledTime(time);
+        }
+
+        private void setScheduledTime(final Instant time) {
+            scheduledTime = time;
+            deadlineNanos = System.nanoTime() + Duration.between(clock.instant(), time).toNanos();
+        }
+
+        @Override
+        public void run() {
+            final Instant actualTime = clock.instant();
+            final long begin = System.nanoTime();
+            if (reschedule == null) {
+                super.run();
+                executionTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+                return;
+            }
+
+            final boolean repeat = runAndReset();
+            executionTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+            if (!repeat) {
+                return;
+            }
+
+            final Instant nextTime = reschedule.apply(scheduledTime, actualTime);
+            if (nextTime == null) {
+                set(null);
+                return;
+            }
+
+            setScheduledTime(nextTime);
+            try {
+                add(this);
+            } catch (final TaskRejectedException e) {
+                log.info("not rescheduling task: {}", e.getMessage());
+                set(null);
+            }
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                cancelledTasks.add(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(final Delayed o) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    @SuppressWarnings("ThisEscapedInObjectConstruction")
+    HashedWheelTaskScheduler(final SchedulerSettings settings, final MeterRegistry meterRegistry, final ExecutorService executor) {
+        tickNanos = Math.max(1, settings.tick().toNanos());
+
+        int wheelSize = 1;
+        while (wheelSize < settings.ticksPerWheel()) {
+            wheelSize <<= 1;
+        }
+        wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = wheelSize - 1;
+
+        this.executor = executor;
+        Gauge.builder("simlar.scheduler.pending", pending, AtomicLong::get)
+                .description("tasks waiting in the timing wheel")
+                .register(meterRegistry);
+        latenessTimer = Timer.builder("simlar.scheduler.lateness")
+                .description("delay between a task's scheduled time and its hand over to the executor")
+                .register(meterRegistry);
+        executionTimer = Timer.builder("simlar.scheduler.execution")
+                .description("execution time of scheduled tasks")
+                .register(meterRegistry);
+
+        startNanos = System.nanoTime();
+        wheelThread = new Thread(this::runWheel, "scheduler-wheel");
+        wheelThread.setDaemon(true);
+        wheelThread.start();
+
+        log.info("timing wheel started with tick '{}' and '{}' buckets", settings.tick(), wheelSize);
+    }
+
+    private WheelTask add(final WheelTask task) {
+        if (!running) {
+            throw new TaskRejectedException("scheduler already shut down");
+        }
+
+        pending.incrementAndGet();
+        addedTasks.add(task);
+        return task;
+    }
+
+    private void runWheel() {
+        long tick = 0;
+        while (running && waitForNextTick(tick)) {
+            removeCancelledTasks();
+            transferAddedTasks(tick);
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    @SuppressWarnings("BooleanMethodNameMustStartWithQuestion")
+    private boolean waitForNextTick(final long tick) {
+        final long deadline = tickNanos * (tick + 1);
+        while (true) {
+            final long sleepNanos = deadline - (System.nanoTime() - startNanos);
+            if (sleepNanos <= 0) {
+                return true;
+            }
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private void removeCancelledTasks() {
+        for (WheelTask task = cancelledTasks.poll(); task != null; task = cancelledTasks.poll()) {
+            if (task.bucket != null) {
+                task.bucket.remove(task);
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    private void transferAddedTasks(final long tick) {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            final WheelTask task = addedTasks.poll();
+            if (task == null) {
+                return;
+            }
+
+            if (task.isCancelled()) {
+                pending.decrementAndGet();
+                continue;
+            }
+
+            final long calculated = (task.deadlineNanos - startNanos) / tickNanos;
+            task.remainingRounds = (calculated - tick) / wheel.length;
+            wheel[(int) (Math.max(calculated, tick) & mask)].add(task);
+        }
+    }
+
+    private void expire(final Bucket bucket) {
+        WheelTask task = bucket.head;
+        while (task != null) {
+            if (task.isCancelled()) {
+                task = bucket.remove(task);
+                pending.decrementAndGet();
+            } else if (task.remainingRounds <= 0) {
+                final WheelTask next = bucket.remove(task);
+                pending.decrementAndGet();
+                dispatch(task);
+                task = next;
+            } else {
+                task.remainingRounds--;
+                task = task.next;
+            }
+        }
+    }
+
+    private void dispatch(final WheelTask task) {
+        latenessTimer.record(System.nanoTime() - task.deadlineNanos, TimeUnit.NANOSECONDS);
+        try {
+            executor.execute(task);
+        } catch (final RejectedExecutionException e) {
+            log.warn("executor rejected scheduled task: {}", e.getMessage());
+            task.cancel(false);
+        }
+    }
+
+    long getPending() {
+        return pending.get();
+    }
+
+    @Override
+    public Clock getClock() {
+        return clock;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(final Runnable task, final Trigger trigger) {
+        final SimpleTriggerContext triggerContext = new SimpleTriggerContext(clock);
+        final Instant first = trigger.nextExecution(triggerContext);
+        if (first == null) {
+            return null;
+        }
+
+        return add(new WheelTask(task, first, (scheduledTime, actualTime) -> {
+            triggerContext.update(scheduledTime, actualTime, clock.instant());
+            return trigger.nextExecution(triggerContext);
+        }));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(final Runnable task, final Instant startTime) {
+        return add(new WheelTask(task, startTime, null));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable task, final Instant startTime, final Duration period) {
+        return add(new WheelTask(task, startTime, (scheduledTime, actualTime) -> scheduledTime.plus(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable task, final Duration period) {
+        return scheduleAtFixedRate(task, clock.instant(), period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable task, final Instant startTime, final Duration delay) {
+        return add(new WheelTask(task, startTime, (scheduledTime, actualTime) -> clock.instant().plus(delay)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable task, final Duration delay) {
+        return scheduleWithFixedDelay(task, clock.instant(), delay);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        wheelThread.interrupt();
+        wheelThread.join();
+        executor.shutdown();
+        log.info("timing wheel stopped with '{}' pending tasks", pending.get());
+    }
+}
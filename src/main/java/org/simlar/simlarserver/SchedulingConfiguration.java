@@ -21,15 +21,27 @@
 
 package org.simlar.simlarserver;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.SchedulingConfigurer;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@AllArgsConstructor
 @Configuration
 class SchedulingConfiguration implements SchedulingConfigurer {
+    private final SchedulerSettings schedulerSettings;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+
     @Override
     public final void configureTasks(final ScheduledTaskRegistrar taskRegistrar) {
         taskRegistrar.setTaskScheduler(taskScheduler());
@@ -37,7 +49,15 @@ class SchedulingConfiguration implements SchedulingConfigurer {
 
     @SuppressWarnings("WeakerAccess")
     @Bean
-    public static TaskScheduler taskScheduler() {
-        return new ThreadPoolTaskScheduler();
+    public TaskScheduler taskScheduler() {
+        return new HashedWheelTaskScheduler(schedulerSettings, meterRegistry, createWorkers());
+    }
+
+    private ExecutorService createWorkers() {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("scheduler-worker-", 0).factory());
+        }
+
+        return Executors.newFixedThreadPool(schedulerSettings.workers(), new CustomizableThreadFactory("scheduler-worker-"));
     }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Active with spring.threads.virtual.enabled=true, which runs the embedded servlet container on virtual threads.
+ * The {@link SchedulingConfiguration} then executes scheduled tasks on virtual threads, too.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+class VirtualThreadConfiguration {
+    @Bean
+    public static BeanPostProcessor concurrencyLimitingDataSourcePostProcessor(final ObjectProvider<VirtualThreadSettings> settings, final ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+                if (bean instanceof final HikariDataSource dataSource) {
+                    return new ConcurrencyLimitingDataSource(dataSource, dataSource.getMaximumPoolSize(), settings.getObject().databaseAcquireTimeout(), meterRegistry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    @Bean
+    public VirtualThreadDiagnostics virtualThreadDiagnostics(final VirtualThreadSettings settings, final MeterRegistry meterRegistry) {
+        return new VirtualThreadDiagnostics(settings.pinnedThreshold(), meterRegistry);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+/**
+ * Watches the JDK flight recorder for virtual threads pinning their carrier thread, e.g. by blocking inside
+ * a synchronized block or a native frame. Pinned virtual threads block a carrier thread, so only a few of them
+ * may stall all virtual threads.
+ */
+@Slf4j
+final class VirtualThreadDiagnostics implements DisposableBean {
+    private static final String EVENT_PINNED        = "jdk.VirtualThreadPinned";
+    private static final String EVENT_SUBMIT_FAILED = "jdk.VirtualThreadSubmitFailed";
+    private static final int    LOGGED_FRAMES       = 8;
+
+    private final RecordingStream recordingStream = new RecordingStream();
+
+    VirtualThreadDiagnostics(final Duration pinnedThreshold, final MeterRegistry meterRegistry) {
+        final Timer pinned = Timer.builder("simlar.virtual-threads.pinned")
+                .description("virtual threads pinned to their carrier thread longer than the threshold")
+                .register(meterRegistry);
+        final Counter submitFailed = Counter.builder("simlar.virtual-threads.submit-failed")
+                .description("virtual threads which could not be started or unparked")
+                .register(meterRegistry);
+        Gauge.builder("simlar.virtual-threads.carriers", () -> Integer.getInteger("jdk.virtualThreadScheduler.parallelism", Runtime.getRuntime().availableProcessors()))
+                .description("carrier threads of the virtual thread scheduler")
+                .register(meterRegistry);
+
+        recordingStream.enable(EVENT_PINNED).withThreshold(pinnedThreshold).withStackTrace();
+        recordingStream.enable(EVENT_SUBMIT_FAILED);
+        recordingStream.onEvent(EVENT_PINNED, event -> {
+            pinned.record(event.getDuration());
+            log.warn("virtual thread '{}' pinned its carrier thread for '{}' ms at {}", threadName(event), event.getDuration().toMillis(), formatStackTrace(event.getStackTrace()));
+        });
+        recordingStream.onEvent(EVENT_SUBMIT_FAILED, event -> {
+            submitFailed.increment();
+            log.error("failed to submit virtual thread '{}': {}", threadName(event), event.getString("exceptionMessage"));
+        });
+        recordingStream.startAsync();
+
+        log.info("watching for virtual threads pinned longer than '{}'", pinnedThreshold);
+    }
+
+    private static String threadName(final RecordedEvent event) {
+        final RecordedThread thread = event.getThread();
+        return thread == null ? "unknown" : thread.getJavaName();
+    }
+
+    private static String formatStackTrace(final RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "unknown";
+        }
+
+        return stackTrace.getFrames().stream()
+                .limit(LOGGED_FRAMES)
+                .map(VirtualThreadDiagnostics::formatFrame)
+                .collect(Collectors.joining(" <- "));
+    }
+
+    private static String formatFrame(final RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + '.' + frame.getMethod().getName() + ':' + frame.getLineNumber();
+    }
+
+    @Override
+    public void destroy() {
+        recordingStream.close();
+    }
+}
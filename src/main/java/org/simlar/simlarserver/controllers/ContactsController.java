@@ -24,14 +24,17 @@ package org.simlar.simlarserver.controllers;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
+import org.simlar.simlarserver.services.contactlistservice.ContactListDelta;
+import org.simlar.simlarserver.services.contactlistservice.ContactListService;
+import org.simlar.simlarserver.services.contactstatusservice.ContactStatusService;
 import org.simlar.simlarserver.services.delaycalculatorservice.DelayCalculatorService;
 import org.simlar.simlarserver.services.subscriberservice.SubscriberService;
 import org.simlar.simlarserver.utils.SimlarId;
 import org.simlar.simlarserver.xml.XmlContact;
 import org.simlar.simlarserver.xml.XmlContacts;
+import org.simlar.simlarserver.xml.XmlContactsDelta;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorRequestedTooManyContactsException;
 import org.springframework.http.MediaType;
-import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -42,25 +45,35 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @AllArgsConstructor
 @Slf4j
 @RestController
 final class ContactsController {
-    public  static final String   REQUEST_PATH  = "/get-contacts-status.xml";
-    private static final Duration DELAY_MINIMUM = Duration.ofMillis(10);
-    private static final Duration DELAY_MAXIMUM = Duration.ofSeconds(8);
+    public  static final String   REQUEST_PATH       = "/get-contacts-status.xml";
+    public  static final String   REQUEST_PATH_DELTA = "/get-contacts-status-delta.xml";
+    private static final Duration DELAY_MINIMUM      = Duration.ofMillis(10);
+    private static final Duration DELAY_MAXIMUM      = Duration.ofSeconds(8);
 
     private final SubscriberService subscriberService;
     private final DelayCalculatorService delayCalculatorService;
-    private final TaskScheduler taskScheduler;
+    private final ContactListService contactListService;
+    private final ContactStatusService contactStatusService;
 
     private static String formatInstant(final Instant instant) {
         return DateTimeFormatter.ISO_ZONED_DATE_TIME.format(ZonedDateTime.ofInstant(instant, ZoneId.systemDefault()));
     }
 
+    private static XmlContact createXmlContact(final SimlarId simlarId, final boolean registered) {
+        return new XmlContact(simlarId.get(), registered ? 1 : 0);
+    }
+
     /**
      * This method handles http post requests. You may test it with:
      * <blockquote>
@@ -84,32 +97,93 @@ final class ContactsController {
         subscriberService.checkCredentialsWithException(login, password);
 
         final List<SimlarId> simlarIds = SimlarId.parsePipeSeparatedSimlarIds(contacts);
+        return schedule(login, calculateDelay(login, simlarIds), simlarIds, registeredSimlarIds ->
+                new XmlContacts(simlarIds.stream()
+                        .map(contactSimlarId -> createXmlContact(contactSimlarId, registeredSimlarIds.contains(contactSimlarId)))
+                        .collect(Collectors.toList())));
+    }
+
+    /**
+     * This method handles http post requests. You may test it with:
+     * <blockquote>
+     * curl --data "login=*0001*&password=5c3d66f5a3928cca2821d711a2c016bb&version=1&hash=1d3a...&added=*0004*&removed=*0003*" http://localhost:8080/get-contacts-status-delta.xml
+     * </blockquote>
+     *
+     * Start with a request without version and all contacts added.
+     * Afterwards, only send the changes together with the version and hash of the last response.
+     *
+     * @param login
+     *            the requesting user's simlarId
+     * @param password
+     *            the hash of the requesting user's password
+     *            md5(simlarId + ":" + domain + ":" + password);
+     * @param version
+     *            the version of the last response, none to start a new contact list
+     * @param hash
+     *            the hash of the last response
+     * @param added
+     *            pipe separated list of simlarIds added since the last response
+     * @param removed
+     *            pipe separated list of simlarIds removed since the last response
+     * @return XmlError or XmlContactsDelta
+     *            error message or the status of every added contact and every contact whose status changed
+     */
+    @SuppressWarnings("MethodWithTooManyParameters")
+    @PostMapping(value = REQUEST_PATH_DELTA, produces = MediaType.APPLICATION_XML_VALUE)
+    public DeferredResult<XmlContactsDelta> getContactStatusDelta(@RequestParam final String login,
+                                                                  @RequestParam final String password,
+                                                                  @RequestParam(required = false) final Long version,
+                                                                  @RequestParam(required = false) final String hash,
+                                                                  @RequestParam(required = false) final String added,
+                                                                  @RequestParam(required = false) final String removed) {
+        log.info("'{}' requested with login '{}' and version '{}'", REQUEST_PATH_DELTA, login, version);
+
+        subscriberService.checkCredentialsWithException(login, password);
+
+        final SimlarId simlarId = SimlarId.create(login);
+        final SortedSet<SimlarId> simlarIds = contactListService.applyChanges(simlarId, version, hash,
+                SimlarId.parsePipeSeparatedSimlarIds(added),
+                SimlarId.parsePipeSeparatedSimlarIds(removed));
+
+        return schedule(login, calculateDelay(login, simlarIds), simlarIds, registeredSimlarIds -> {
+            final ContactListDelta delta = contactListService.save(simlarId, version, simlarIds, registeredSimlarIds, Instant.now());
+            return new XmlContactsDelta(delta.version(), delta.hash(), delta.statusChanges().entrySet().stream()
+                    .map(entry -> createXmlContact(entry.getKey(), entry.getValue()))
+                    .collect(Collectors.toList()));
+        });
+    }
+
+    private Duration calculateDelay(final String login, final Collection<SimlarId> simlarIds) {
         final Duration delay = ObjectUtils.max(DELAY_MINIMUM, delayCalculatorService.calculateRequestDelay(SimlarId.create(login), simlarIds));
         if (DELAY_MAXIMUM.compareTo(delay) < 0) {
             log.debug("request delay '{}' blocking simlarId '{}' when requesting '{}' contacts unified list '{}'", delay, login, simlarIds.size(), SimlarId.sortAndUnifySimlarIds(simlarIds));
             throw new XmlErrorRequestedTooManyContactsException("request delay=" + delay + " blocking simlarId=" + login);
         }
 
+        return delay;
+    }
+
+    private <T> DeferredResult<T> schedule(final String login, final Duration delay, final Collection<SimlarId> simlarIds, final Function<Set<SimlarId>, T> contactStatus) {
         final Instant scheduledTime = Instant.now().plus(delay);
         log.info("scheduling getContactStatus to '{}'", formatInstant(scheduledTime));
 
-        final DeferredResult<XmlContacts> deferredResult = new DeferredResult<>();
-        taskScheduler.schedule(() -> {
+        final DeferredResult<T> deferredResult = new DeferredResult<>();
+        contactStatusService.schedule(scheduledTime, simlarIds, registeredSimlarIds -> {
             if (deferredResult.isSetOrExpired()) {
                 log.error("deferred result already set or expired simlarId '{}' delay '{}'", login, delay);
             } else {
                 log.info("executing getContactStatus scheduled to '{}'", formatInstant(scheduledTime));
 
-                final Instant begin = Instant.now();
-                final List<SimlarId> registeredSimlarIds = subscriberService.filterSimlarIdsRegistered(simlarIds);
-                deferredResult.setResult(
-                        new XmlContacts(simlarIds.stream()
-                                .map(contactSimlarId -> new XmlContact(contactSimlarId.get(), registeredSimlarIds.contains(contactSimlarId) ? 1 : 0))
-                                .collect(Collectors.toList()))
-                );
-                log.info("contact status detection took '{}' ms", Duration.between(begin, Instant.now()).toMillis());
+                try {
+                    deferredResult.setResult(contactStatus.apply(registeredSimlarIds));
+                } catch (final RuntimeException e) {
+                    deferredResult.setErrorResult(e);
+                }
             }
-        }, scheduledTime);
+        }, e -> {
+            log.error("getContactStatus scheduled to '{}' failed for simlarId '{}'", formatInstant(scheduledTime), login);
+            deferredResult.setErrorResult(e);
+        });
 
         return deferredResult;
     }
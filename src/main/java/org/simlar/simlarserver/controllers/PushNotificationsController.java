@@ -26,8 +26,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.simlar.simlarserver.data.DeviceType;
 import org.simlar.simlarserver.database.models.PushNotification;
 import org.simlar.simlarserver.database.repositories.PushNotificationsRepository;
+import org.simlar.simlarserver.services.pushnotification.PushRegistrationCache;
 import org.simlar.simlarserver.services.subscriberservice.SubscriberService;
 import org.simlar.simlarserver.utils.ApplePushId;
+import org.simlar.simlarserver.utils.SimlarId;
 import org.simlar.simlarserver.xml.XmlSuccessPushNotification;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorUnknownApplePushIdException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorUnknownPushIdTypeException;
@@ -44,6 +46,7 @@ final class PushNotificationsController {
 
     private final SubscriberService           subscriberService;
     private final PushNotificationsRepository pushNotificationsRepository;
+    private final PushRegistrationCache       pushRegistrationCache;
 
     /**
      * This method handles http post requests. You may test it with:
@@ -81,6 +84,7 @@ final class PushNotificationsController {
         }
 
         pushNotificationsRepository.save(new PushNotification(login, checkedType, pushId));
+        pushRegistrationCache.invalidate(SimlarId.create(login));
 
         return new XmlSuccessPushNotification(deviceType, pushId);
     }
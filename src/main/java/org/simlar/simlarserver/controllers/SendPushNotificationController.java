@@ -25,22 +25,34 @@ import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
+import org.simlar.simlarserver.services.pushnotification.PushNotificationResult;
 import org.simlar.simlarserver.services.pushnotification.PushNotificationService;
 import org.simlar.simlarserver.services.pushnotification.PushNotificationSettings;
 import org.simlar.simlarserver.utils.SimlarId;
+import org.simlar.simlarserver.xml.XmlPushNotificationResult;
 import org.simlar.simlarserver.xml.XmlSuccessSendPushNotification;
+import org.simlar.simlarserver.xml.XmlSuccessSendPushNotifications;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorFailedToRequestPushNotificationException;
+import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorNoSimlarIdException;
+import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorTooManyPushNotificationCalleesException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorWrongCredentialsException;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
 @AllArgsConstructor
 @Slf4j
 @RestController
 final class SendPushNotificationController {
     public static final String REQUEST_PATH = "/send-push-notification.xml";
+    public static final String REQUEST_PATH_BATCH = "/send-push-notifications.xml";
 
     private final PushNotificationService pushNotificationsService;
     private final PushNotificationSettings pushNotificationsSettings;
@@ -50,6 +62,7 @@ final class SendPushNotificationController {
      * <blockquote>
      * curl --data "apiKey=someKey&callee=*0001*" http://localhost:8080/send-push-notification.xml
      * </blockquote>
+     * The push notification is requested asynchronously, so the servlet thread is not blocked waiting for the provider.
      *
      * @param apiKey
      *            a key for authorization
@@ -61,9 +74,68 @@ final class SendPushNotificationController {
      *            error message or success message containing deviceType and pushId
      */
     @PostMapping(value = REQUEST_PATH, produces = MediaType.APPLICATION_XML_VALUE)
-    public XmlSuccessSendPushNotification sendPushNotification(@RequestParam final String apiKey, @RequestParam final String caller, @RequestParam final String callee) {
+    public CompletableFuture<XmlSuccessSendPushNotification> sendPushNotification(@RequestParam final String apiKey, @RequestParam final String caller, @RequestParam final String callee) {
         log.info("push notification requested with caller '{}' inviting callee '{}'", caller, callee);
+        checkApiKey(apiKey);
+
+        return pushNotificationsService.sendPushNotificationAsync(SimlarId.create(caller), SimlarId.create(callee))
+                .handle((messageId, throwable) -> {
+                    if (throwable != null) {
+                        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                        if (!(cause instanceof TimeoutException) && !(cause instanceof RejectedExecutionException)) {
+                            throw new CompletionException(cause);
+                        }
+                        log.error("push notification with caller '{}' inviting callee '{}' failed with '{}'", caller, callee, cause.getClass().getSimpleName());
+                    }
+
+                    if (StringUtils.isBlank(messageId)) {
+                        throw new XmlErrorFailedToRequestPushNotificationException("failed to request push notification with caller '" + caller + "' inviting  callee '" + callee + '\'');
+                    }
+
+                    return new XmlSuccessSendPushNotification(messageId);
+                });
+    }
+
+    /**
+     * Requests push notifications to many callees at once, e.g. for ringing several devices.
+     * The number of callees is limited, so one request cannot fill the providers' queues. You may test it with:
+     * <blockquote>
+     * curl --data "apiKey=someKey&caller=*0001*&callees=*0002*|*0003*" http://localhost:8080/send-push-notifications.xml
+     * </blockquote>
+     *
+     * @param apiKey
+     *            a key for authorization
+     * @param caller
+     *            a simlarId identifying the client starting the call
+     * @param callees
+     *            pipe separated simlarIds identifying the clients the push notifications should go to
+     * @return XmlError or XmlSuccessSendPushNotifications
+     *            error message or a message id or error per callee
+     */
+    @PostMapping(value = REQUEST_PATH_BATCH, produces = MediaType.APPLICATION_XML_VALUE)
+    public CompletableFuture<XmlSuccessSendPushNotifications> sendPushNotifications(@RequestParam final String apiKey, @RequestParam final String caller, @RequestParam final String callees) {
+        log.info("push notifications requested with caller '{}' inviting callees '{}'", caller, callees);
+        checkApiKey(apiKey);
+
+        final SimlarId simlarIdCaller = SimlarId.create(caller);
+        if (simlarIdCaller == null) {
+            throw new XmlErrorNoSimlarIdException("push notifications requested with caller '" + caller + '\'');
+        }
 
+        final List<SimlarId> simlarIdCallees = SimlarId.parsePipeSeparatedSimlarIds(callees);
+        if (simlarIdCallees.size() > pushNotificationsSettings.maxCallees()) {
+            throw new XmlErrorTooManyPushNotificationCalleesException("push notifications requested with caller '" + caller + "' inviting " + simlarIdCallees.size() + " callees > " + pushNotificationsSettings.maxCallees());
+        }
+
+        return pushNotificationsService.sendPushNotificationsAsync(simlarIdCaller, simlarIdCallees)
+                .thenApply(results -> new XmlSuccessSendPushNotifications(results.stream().map(SendPushNotificationController::createXmlResult).toList()));
+    }
+
+    private static XmlPushNotificationResult createXmlResult(final PushNotificationResult result) {
+        return new XmlPushNotificationResult(result.callee().get(), result.messageId(), result.error());
+    }
+
+    private void checkApiKey(final String apiKey) {
         final String configuredApiKey = pushNotificationsSettings.apiKey();
         if (StringUtils.isBlank(configuredApiKey)) {
             throw new XmlErrorWrongCredentialsException("received apiKey '" + apiKey + "' but none configured");
@@ -72,12 +144,5 @@ final class SendPushNotificationController {
         if (!Strings.CS.equals(apiKey, configuredApiKey)) {
             throw new XmlErrorWrongCredentialsException("wrong apiKey '" + apiKey + '\'');
         }
-
-        final String messageId = pushNotificationsService.sendPushNotification(SimlarId.create(caller), SimlarId.create(callee));
-        if (StringUtils.isBlank(messageId)) {
-            throw new XmlErrorFailedToRequestPushNotificationException("failed to request push notification with caller '" + caller + "' inviting  callee '" + callee + '\'');
-        }
-
-        return new XmlSuccessSendPushNotification(messageId);
     }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.database.models;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@Entity
+@Table(name = "simlar_contact_list")
+public final class ContactList {
+    @Id
+    @Column(nullable = false, length = 64)
+    private String simlarId;
+
+    @Column(nullable = false, columnDefinition = "int(10) unsigned")
+    private long version;
+
+    @Column(nullable = false, length = 64)
+    private String hash;
+
+    /// pipe separated sorted simlarIds
+    @ToString.Exclude
+    @Column(nullable = false, columnDefinition = "mediumtext")
+    private String contacts;
+
+    /// pipe separated sorted simlarIds of the contacts registered at this version
+    @ToString.Exclude
+    @Column(nullable = false, columnDefinition = "mediumtext")
+    private String registered;
+
+    @Column(nullable = false, columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP")
+    private Instant timestamp;
+
+    @SuppressWarnings("ConstructorWithTooManyParameters")
+    public ContactList(final String simlarId, final long version, final String hash, final String contacts, final String registered, final Instant timestamp) {
+        this.simlarId = simlarId;
+        this.version = version;
+        this.hash = hash;
+        this.contacts = contacts;
+        this.registered = registered;
+        this.timestamp = timestamp;
+    }
+}
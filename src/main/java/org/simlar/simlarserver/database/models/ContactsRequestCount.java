@@ -61,8 +61,4 @@ public final class ContactsRequestCount {
         this.hash = hash;
         this.count = count;
     }
-
-    public void incrementCount() {
-        count++;
-    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.database.models;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.simlar.simlarserver.data.SmsOutboxStatus;
+import org.simlar.simlarserver.data.TwilioRequestType;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.time.Instant;
+
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@Entity
+@Table(name = "simlar_sms_outbox", indexes = @Index(name = "outbox_due", columnList = "status, nextAttempt"))
+public final class SmsOutboxEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 64)
+    private String idempotencyKey;
+
+    @Column(nullable = false, length = 64)
+    private String provider;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 64)
+    private TwilioRequestType type;
+
+    @Column(nullable = false, length = 64)
+    private String telephoneNumber;
+
+    @ToString.Exclude
+    @Column(nullable = false, length = 1024)
+    private String message;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 64)
+    private SmsOutboxStatus status;
+
+    @Column(nullable = false, columnDefinition = "int(10) unsigned")
+    private int attempts;
+
+    @Column(nullable = false, columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP")
+    private Instant created;
+
+    @Column(nullable = false, columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP")
+    private Instant nextAttempt;
+
+    @SuppressWarnings({"UnnecessaryThis", "ConstructorWithTooManyParameters"})
+    public SmsOutboxEntry(final String idempotencyKey, final String provider, final TwilioRequestType type, final String telephoneNumber, final String message, final Instant created) {
+        this.idempotencyKey  = idempotencyKey;
+        this.provider        = provider;
+        this.type            = type;
+        this.telephoneNumber = telephoneNumber;
+        this.message         = message;
+        this.status          = SmsOutboxStatus.PENDING;
+        this.attempts        = 0;
+        this.created         = created;
+        this.nextAttempt     = created;
+    }
+}
@@ -36,6 +36,7 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import java.time.Instant;
 
@@ -45,7 +46,9 @@ import java.time.Instant;
 @ToString
 @EqualsAndHashCode
 @Entity
-@Table(name = "simlar_sms_provider_log")
+@Table(name = "simlar_sms_provider_log", indexes = {
+        @Index(name = "sms_provider_log_session_id", columnList = "sessionId"),
+        @Index(name = "sms_provider_log_timestamp", columnList = "timestamp") })
 public final class SmsProviderLog {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -23,12 +23,17 @@ package org.simlar.simlarserver.database.repositories;
 
 import org.simlar.simlarserver.data.AccountRequestType;
 import org.simlar.simlarserver.database.models.AccountCreationRequestCount;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.persistence.LockModeType;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 
 @SuppressWarnings({"InterfaceNeverImplemented", "MethodReturnAlwaysConstant"})
 public interface AccountCreationRequestCountRepository extends CrudRepository<AccountCreationRequestCount, Integer> {
@@ -51,4 +56,18 @@ public interface AccountCreationRequestCountRepository extends CrudRepository<Ac
 
     @Query("SELECT SUM(requestTries) FROM AccountCreationRequestCount WHERE simlarId like ?1 AND timestamp >= ?2")
     Integer sumRequestTriesForRegion(final String likeSimlarId, final Instant timestamp);
+
+    @Query("FROM AccountCreationRequestCount WHERE simlarId > ?1 AND timestamp >= ?2 ORDER BY simlarId")
+    List<AccountCreationRequestCount> findUpdatedSince(final String simlarId, final Instant timestamp, final Pageable pageable);
+
+    @Query("SELECT simlarId FROM AccountCreationRequestCount WHERE simlarId > ?1 AND timestamp < ?2 AND registrationCodeTimestamp < ?2 AND (callTimestamp IS NULL OR callTimestamp < ?2) ORDER BY simlarId")
+    List<String> findExpiredSimlarIds(final String simlarId, final Instant before, final Pageable pageable);
+
+    /**
+     * Checks the timestamps again, so requests updated after {@link #findExpiredSimlarIds} are kept.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM AccountCreationRequestCount WHERE simlarId IN ?1 AND timestamp < ?2 AND registrationCodeTimestamp < ?2 AND (callTimestamp IS NULL OR callTimestamp < ?2)")
+    int deleteExpired(final Collection<String> simlarIds, final Instant before);
 }
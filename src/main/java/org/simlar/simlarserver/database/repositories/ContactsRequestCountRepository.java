@@ -22,10 +22,77 @@
 package org.simlar.simlarserver.database.repositories;
 
 import org.simlar.simlarserver.database.models.ContactsRequestCount;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 
 @SuppressWarnings({"InterfaceNeverImplemented", "MethodReturnAlwaysConstant"})
 public interface ContactsRequestCountRepository extends CrudRepository<ContactsRequestCount, String> {
     @SuppressWarnings("unused")
     ContactsRequestCount findBySimlarId(final String simlarId);
+
+    @Query("SELECT count FROM ContactsRequestCount WHERE simlarId = ?1")
+    Integer findCountBySimlarId(final String simlarId);
+
+    @Query("FROM ContactsRequestCount WHERE simlarId > ?1 AND timestamp >= ?2 ORDER BY simlarId")
+    List<ContactsRequestCount> findUpdatedSince(final String simlarId, final Instant timestamp, final Pageable pageable);
+
+    @Query("SELECT simlarId FROM ContactsRequestCount WHERE simlarId > ?1 AND timestamp < ?2 ORDER BY simlarId")
+    List<String> findExpiredSimlarIds(final String simlarId, final Instant before, final Pageable pageable);
+
+    /**
+     * Checks the timestamp again, so counters updated after {@link #findExpiredSimlarIds} are kept.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ContactsRequestCount WHERE simlarId IN ?1 AND timestamp < ?2")
+    int deleteExpired(final Collection<String> simlarIds, final Instant before);
+
+    /**
+     * Inserts or updates the counter in one atomic statement.
+     * <p>
+     * Requesting a single contact with a different hash, e.g. a user granting contacts permission again,
+     * increments the counter and keeps the hash.
+     * Otherwise, the counter is reset if it has not been updated since resetBefore.
+     * Requesting the same contacts again keeps the maximum and different contacts are summed up.
+     * <p>
+     * Assignments refer to the previous values, because the count is assigned before hash and timestamp
+     * and MariaDB evaluates assignments from left to right.
+     */
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            INSERT INTO simlar_contacts_request_count (simlarId, timestamp, hash, count) VALUES (?1, ?2, ?3, ?4)
+            ON DUPLICATE KEY UPDATE
+                count = CASE
+                    WHEN ?4 = 1 AND hash <> ?3 THEN count + 1
+                    WHEN timestamp < ?5 THEN ?4
+                    WHEN hash = ?3 THEN GREATEST(count, ?4)
+                    ELSE count + ?4
+                END,
+                hash = CASE WHEN ?4 = 1 AND hash <> ?3 THEN hash ELSE ?3 END,
+                timestamp = ?2
+            """)
+    void upsert(final String simlarId, final Instant now, final String hash, final int count, final Instant resetBefore);
+
+    /**
+     * Adds requests counted in memory, so requests counted by other nodes in the meantime are kept.
+     * <p>
+     * The counter is reset if it has not been updated since resetBefore.
+     * The count is assigned before the timestamp, so it refers to the previous timestamp.
+     */
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            INSERT INTO simlar_contacts_request_count (simlarId, timestamp, hash, count) VALUES (?1, ?2, ?3, ?4)
+            ON DUPLICATE KEY UPDATE
+                count = CASE WHEN timestamp < ?5 THEN ?4 ELSE count + ?4 END,
+                hash = ?3,
+                timestamp = GREATEST(timestamp, ?2)
+            """)
+    void add(final String simlarId, final Instant timestamp, final String hash, final int delta, final Instant resetBefore);
 }
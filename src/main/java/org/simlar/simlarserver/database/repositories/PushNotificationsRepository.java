@@ -25,10 +25,18 @@ import org.simlar.simlarserver.database.models.PushNotification;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
+
 @SuppressWarnings({"SameParameterValue", "unused", "InterfaceNeverImplemented", "MethodReturnAlwaysConstant", "RedundantSuppression"})
 public interface PushNotificationsRepository extends CrudRepository<PushNotification, String> {
     PushNotification findBySimlarId(final String simlarId);
 
+    List<PushNotification> findBySimlarIdIn(final Collection<String> simlarIds);
+
     @Transactional
     void deleteBySimlarId(final String simlarId);
+
+    @Transactional
+    long deleteBySimlarIdAndPushId(final String simlarId, final String pushId);
 }
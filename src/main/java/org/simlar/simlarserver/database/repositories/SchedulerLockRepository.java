@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.database.repositories;
+
+import org.simlar.simlarserver.database.models.SchedulerLock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@SuppressWarnings({"InterfaceNeverImplemented", "MethodReturnAlwaysConstant"})
+public interface SchedulerLockRepository extends CrudRepository<SchedulerLock, String> {
+    /**
+     * Creates the lock unless it exists, without touching a lock held by another node.
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = "INSERT INTO simlar_scheduler_lock (name, lockedUntil, lockedBy) VALUES (?1, ?2, ?3) ON DUPLICATE KEY UPDATE lockedBy = lockedBy")
+    void create(final String name, final Instant lockedUntil, final String lockedBy);
+
+    /**
+     * Takes the lock if it is not held or its lease has run out, so a crashed node cannot block the others forever.
+     *
+     * @return 1 if locked, 0 otherwise
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE SchedulerLock SET lockedUntil = ?2, lockedBy = ?3 WHERE name = ?1 AND lockedUntil <= ?4")
+    int lock(final String name, final Instant lockedUntil, final String lockedBy, final Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE SchedulerLock SET lockedUntil = ?2 WHERE name = ?1 AND lockedBy = ?3")
+    int unlock(final String name, final Instant now, final String lockedBy);
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.database.repositories;
+
+import org.simlar.simlarserver.data.SmsOutboxStatus;
+import org.simlar.simlarserver.database.models.SmsOutboxEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@SuppressWarnings({"InterfaceNeverImplemented", "MethodReturnAlwaysConstant"})
+public interface SmsOutboxRepository extends CrudRepository<SmsOutboxEntry, Long> {
+    boolean existsByIdempotencyKeyAndStatusIn(final String idempotencyKey, final Collection<SmsOutboxStatus> statuses);
+
+    @Query("SELECT id FROM SmsOutboxEntry WHERE status IN ?1 AND nextAttempt <= ?2 ORDER BY nextAttempt")
+    List<Long> findDueIds(final Collection<SmsOutboxStatus> statuses, final Instant now, final Pageable pageable);
+
+    /**
+     * Atomically claims a due entry, so only one worker sends it.
+     *
+     * @return 1 if claimed, 0 otherwise
+     */
+    @Modifying
+    @Query("UPDATE SmsOutboxEntry SET status = ?2, attempts = attempts + 1, nextAttempt = ?3 WHERE id = ?1 AND status IN ?4 AND nextAttempt <= ?5")
+    int claim(final Long id, final SmsOutboxStatus status, final Instant leaseUntil, final Collection<SmsOutboxStatus> dueStatuses, final Instant now);
+}
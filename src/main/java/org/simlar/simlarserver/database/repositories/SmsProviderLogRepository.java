@@ -22,11 +22,39 @@
 package org.simlar.simlarserver.database.repositories;
 
 import org.simlar.simlarserver.database.models.SmsProviderLog;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 
 @SuppressWarnings({"unused", "InterfaceNeverImplemented", "MethodReturnAlwaysConstant", "RedundantSuppression"})
 public interface SmsProviderLogRepository extends CrudRepository<SmsProviderLog, Integer> {
     SmsProviderLog findByTelephoneNumber(final String telephoneNumber);
 
     SmsProviderLog findBySessionId(final String sessionId);
+
+    List<SmsProviderLog> findByTimestampBeforeOrderByIdAsc(final Instant timestamp, final Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM SmsProviderLog WHERE id IN ?1")
+    int deleteByIdIn(final Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE SmsProviderLog SET callbackTimestamp = ?2, status = ?3 WHERE id = ?1")
+    int updateCallback(final Long id, final Instant callbackTimestamp, final String status);
+
+    /**
+     * Skips callbacks older than the saved one, which may still be queued in the TwilioCallbackWriter.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE SmsProviderLog SET callbackTimestamp = ?2, status = ?3, error = ?4 WHERE id = ?1 AND (callbackTimestamp IS NULL OR callbackTimestamp <= ?2)")
+    int updateCallback(final Long id, final Instant callbackTimestamp, final String status, final String error);
 }
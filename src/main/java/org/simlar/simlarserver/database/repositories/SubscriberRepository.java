@@ -22,6 +22,7 @@
 package org.simlar.simlarserver.database.repositories;
 
 import org.simlar.simlarserver.database.models.Subscriber;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.transaction.annotation.Transactional;
@@ -40,6 +41,26 @@ public interface SubscriberRepository extends CrudRepository<Subscriber, Long> {
     @Query("SELECT username FROM Subscriber WHERE domain = ?1 AND username IN ?2")
     List<String> findUsernameByDomainAndUsernameIn(final String domain, final Set<String> usernames);
 
+    @Query("SELECT username AS username, ha1 AS ha1 FROM Subscriber WHERE domain = ?1 AND username IN ?2")
+    List<UsernameAndHa1> findUsernameAndHa1ByDomainAndUsernameIn(final String domain, final Set<String> usernames);
+
+    long countByDomain(final String domain);
+
+    @Query("SELECT id AS id, username AS username FROM Subscriber WHERE domain = ?1 AND id > ?2 ORDER BY id")
+    List<IdAndUsername> findIdAndUsernameByDomainAndIdGreaterThan(final String domain, final Long id, final Pageable pageable);
+
     @Transactional
     void deleteByUsernameAndDomain(final String username, final String domain);
+
+    interface IdAndUsername {
+        Long getId();
+
+        String getUsername();
+    }
+
+    interface UsernameAndHa1 {
+        String getUsername();
+
+        String getHa1();
+    }
 }
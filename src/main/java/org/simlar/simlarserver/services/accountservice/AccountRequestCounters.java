@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.accountservice;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simlar.simlarserver.database.models.AccountCreationRequestCount;
+import org.simlar.simlarserver.database.repositories.AccountCreationRequestCountRepository;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Counts account requests for the abuse limits per ip, in total and per region.
+ * <p>
+ * With sliding windows enabled, the requests are counted in memory after the windows have been rebuilt from the
+ * database on start up. Otherwise, or until then, the database is queried.
+ * The database sums up the request tries of every number requested last within the time frame,
+ * whereas the sliding windows count the requests themselves. So both differ slightly, which the periodic
+ * consistency check logs.
+ */
+@Slf4j
+@Component
+final class AccountRequestCounters {
+    private static final int MINUTES_PER_HOUR = 60;
+    private static final int MINUTES_PER_DAY  = 24 * MINUTES_PER_HOUR;
+
+    private final AccountRequestCountersSettings settings;
+    private final AccountCreationRequestCountRepository accountCreationRepository;
+    private final TaskScheduler taskScheduler;
+
+    private final ConcurrentMap<String, SlidingWindowCounter> perIp = new ConcurrentHashMap<>();
+    private final SlidingWindowCounter totalPerHour = new SlidingWindowCounter(MINUTES_PER_HOUR);
+    private final SlidingWindowCounter totalPerDay = new SlidingWindowCounter(MINUTES_PER_DAY);
+    private final RegionTrie regionTrie;
+    private volatile boolean loaded;
+
+    private AccountRequestCounters(final AccountRequestCountersSettings settings, final CreateAccountSettings createAccountSettings, final AccountCreationRequestCountRepository accountCreationRepository, final TaskScheduler taskScheduler) {
+        this.settings = settings;
+        this.accountCreationRepository = accountCreationRepository;
+        this.taskScheduler = taskScheduler;
+
+        regionTrie = new RegionTrie(createAccountSettings.getRegionalSettings());
+        log.info("compiled '{}' regional settings", regionTrie.size());
+    }
+
+    @SuppressWarnings({"unused", "RedundantSuppression"})
+    @EventListener
+    public void handleApplicationReadyEvent(final ApplicationReadyEvent event) {
+        if (!settings.enabled()) {
+            log.info("account request sliding windows disabled");
+            return;
+        }
+
+        rebuild(Instant.now());
+        taskScheduler.scheduleWithFixedDelay(() -> checkConsistency(Instant.now()), Instant.now().plus(settings.consistencyCheckInterval()), settings.consistencyCheckInterval());
+    }
+
+    private boolean isActive() {
+        return settings.enabled() && loaded;
+    }
+
+    void rebuild(final Instant now) {
+        final Instant begin = Instant.now();
+        try {
+            String lastSimlarId = "";
+            int count = 0;
+            while (true) {
+                final List<AccountCreationRequestCount> page = accountCreationRepository.findUpdatedSince(lastSimlarId, now.minus(Duration.ofDays(1)), PageRequest.ofSize(settings.batchSize()));
+                for (final AccountCreationRequestCount request : page) {
+                    final SimlarId simlarId = SimlarId.create(request.getSimlarId());
+                    if (simlarId != null) {
+                        add(request.getIp(), simlarId, request.getTimestamp(), request.getRequestTries());
+                    }
+                }
+                count += page.size();
+
+                if (page.size() < settings.batchSize()) {
+                    break;
+                }
+                lastSimlarId = page.getLast().getSimlarId();
+            }
+
+            loaded = true;
+            log.info("rebuilt account request sliding windows from '{}' requests in '{}' ms", count, Duration.between(begin, Instant.now()).toMillis());
+        } catch (final DataAccessException e) {
+            log.error("rebuilding account request sliding windows failed, querying the database instead", e);
+        }
+    }
+
+    void add(final String ip, final SimlarId simlarId, final Instant now) {
+        if (settings.enabled()) {
+            /// requests during the rebuild may be counted twice, which errs on the safe side
+            add(ip, simlarId, now, 1);
+        }
+    }
+
+    private void add(final String ip, final SimlarId simlarId, final Instant time, final int count) {
+        perIp.compute(ip, (key, counter) -> {
+            final SlidingWindowCounter result = counter == null ? new SlidingWindowCounter(MINUTES_PER_HOUR) : counter;
+            result.add(time, count);
+            return result;
+        });
+        totalPerHour.add(time, count);
+        totalPerDay.add(time, count);
+
+        for (final RegionTrie.Region region : regionTrie.findAll(simlarId)) {
+            region.getRequestsPerHour().add(time, count);
+        }
+    }
+
+    List<RegionTrie.Region> findRegions(final SimlarId simlarId) {
+        return regionTrie.findAll(simlarId);
+    }
+
+    RegionTrie.Region findRegion(final SimlarId simlarId) {
+        return regionTrie.findLongest(simlarId);
+    }
+
+    Integer requestsPerIp(final String ip, final Instant now) {
+        if (!isActive()) {
+            return accountCreationRepository.sumRequestTries(ip, now.minus(Duration.ofHours(1)));
+        }
+
+        final SlidingWindowCounter counter = perIp.get(ip);
+        return counter == null ? 0 : counter.sum(now);
+    }
+
+    Integer requestsTotalPerHour(final Instant now) {
+        return isActive() ? totalPerHour.sum(now) : accountCreationRepository.sumRequestTries(now.minus(Duration.ofHours(1)));
+    }
+
+    Integer requestsTotalPerDay(final Instant now) {
+        return isActive() ? totalPerDay.sum(now) : accountCreationRepository.sumRequestTries(now.minus(Duration.ofDays(1)));
+    }
+
+    Integer requestsPerRegion(final RegionTrie.Region region, final Instant now) {
+        return isActive()
+                ? region.getRequestsPerHour().sum(now)
+                : accountCreationRepository.sumRequestTriesForRegion('*' + region.getRegionCode() + '%', now.minus(Duration.ofHours(1)));
+    }
+
+    void checkConsistency(final Instant now) {
+        perIp.keySet().forEach(ip -> perIp.computeIfPresent(ip, (key, counter) -> counter.sum(now) == 0 ? null : counter));
+
+        final Integer databasePerHour = accountCreationRepository.sumRequestTries(now.minus(Duration.ofHours(1)));
+        final Integer databasePerDay = accountCreationRepository.sumRequestTries(now.minus(Duration.ofDays(1)));
+        log.info("account requests within one hour: sliding window '{}' database '{}', within one day: sliding window '{}' database '{}', tracking '{}' ips",
+                totalPerHour.sum(now), databasePerHour, totalPerDay.sum(now), databasePerDay, perIp.size());
+    }
+}
@@ -27,9 +27,12 @@ import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
 import org.simlar.simlarserver.data.AccountRequestType;
+import org.simlar.simlarserver.data.TwilioRequestType;
 import org.simlar.simlarserver.database.models.AccountCreationRequestCount;
 import org.simlar.simlarserver.database.repositories.AccountCreationRequestCountRepository;
 import org.simlar.simlarserver.database.repositories.PushNotificationsRepository;
+import org.simlar.simlarserver.services.pushnotification.PushRegistrationCache;
+import org.simlar.simlarserver.services.smsoutboxservice.SmsOutboxService;
 import org.simlar.simlarserver.services.smsservice.SmsService;
 import org.simlar.simlarserver.services.subscriberservice.SubscriberService;
 import org.simlar.simlarserver.utils.CallText;
@@ -67,23 +70,29 @@ public final class AccountService {
     private static final Pattern REGEX_REGISTRATION_CODE = Pattern.compile("\\d{" + Password.REGISTRATION_CODE_LENGTH + '}');
 
     private final SmsService smsService;
+    private final SmsOutboxService smsOutboxService;
     private final CreateAccountSettings createAccountSettings;
     private final AccountCreationRequestCountRepository accountCreationRepository;
+    private final AccountRequestCounters accountRequestCounters;
     private final SubscriberService subscriberService;
     private final TransactionTemplate transactionTemplate;
     private final TaskScheduler taskScheduler;
     private final PushNotificationsRepository pushNotificationsRepository;
+    private final PushRegistrationCache pushRegistrationCache;
 
     @SuppressWarnings("ConstructorWithTooManyParameters")
     @Autowired // fix IntelliJ inspection warning unused
-    private AccountService(final SmsService smsService, final CreateAccountSettings createAccountSettings, final AccountCreationRequestCountRepository accountCreationRepository, final SubscriberService subscriberService, final PlatformTransactionManager transactionManager, final TaskScheduler taskScheduler, final PushNotificationsRepository pushNotificationsRepository) {
+    private AccountService(final SmsService smsService, final SmsOutboxService smsOutboxService, final CreateAccountSettings createAccountSettings, final AccountCreationRequestCountRepository accountCreationRepository, final AccountRequestCounters accountRequestCounters, final SubscriberService subscriberService, final PlatformTransactionManager transactionManager, final TaskScheduler taskScheduler, final PushNotificationsRepository pushNotificationsRepository, final PushRegistrationCache pushRegistrationCache) {
         this.smsService = smsService;
+        this.smsOutboxService = smsOutboxService;
         this.createAccountSettings = createAccountSettings;
         this.accountCreationRepository = accountCreationRepository;
+        this.accountRequestCounters = accountRequestCounters;
         this.subscriberService = subscriberService;
         transactionTemplate = new TransactionTemplate(transactionManager);
         this.taskScheduler = taskScheduler;
         this.pushNotificationsRepository = pushNotificationsRepository;
+        this.pushRegistrationCache = pushRegistrationCache;
 
         for (final RegionalSettings regional : createAccountSettings.getRegionalSettings()) {
             log.info("regional setting region code '{}' with max requests per hour '{}'", regional.regionCode(), regional.maxRequestsPerHour());
@@ -122,30 +131,26 @@ public final class AccountService {
             throw new XmlErrorNoIpException("request account creation with empty ip for telephone number: " + telephoneNumber);
         }
 
-        final Instant anHourAgo = now.minus(Duration.ofHours(1));
-        checkRequestTriesLimit(accountCreationRepository.sumRequestTries(ip, anHourAgo), createAccountSettings.getMaxRequestsPerIpPerHour(),
+        checkRequestTriesLimit(accountRequestCounters.requestsPerIp(ip, now), createAccountSettings.getMaxRequestsPerIpPerHour(),
                 String.format("too many create account requests for ip '%s' ", ip));
 
-        checkRequestTriesLimitWithAlert(accountCreationRepository.sumRequestTries(anHourAgo), createAccountSettings.getMaxRequestsTotalPerHour(),
-                "too many total create account requests within one hour");
+        checkRequestTriesLimitWithAlert(accountRequestCounters.requestsTotalPerHour(now), createAccountSettings.getMaxRequestsTotalPerHour(),
+                "too many total create account requests within one hour", now);
 
-        checkRequestTriesLimitWithAlert(accountCreationRepository.sumRequestTries(now.minus(Duration.ofDays(1))),
+        checkRequestTriesLimitWithAlert(accountRequestCounters.requestsTotalPerDay(now),
                 createAccountSettings.getMaxRequestsTotalPerDay(),
-                "too many total create account requests within one day");
+                "too many total create account requests within one day", now);
 
-        for (final RegionalSettings regional : createAccountSettings.getRegionalSettings()) {
+        for (final RegionTrie.Region region : accountRequestCounters.findRegions(simlarId)) {
             //noinspection ObjectAllocationInLoop
-            final String regionCode = '*' + regional.regionCode();
-            if (StringUtils.isNotEmpty(regionCode) && simlarId.get().startsWith(regionCode)) {
-                //noinspection ObjectAllocationInLoop
-                checkRequestTriesLimit(accountCreationRepository.sumRequestTriesForRegion(regionCode + '%', anHourAgo), regional.maxRequestsPerHour(),
-                        String.format("too many create account requests for region '%s' ", regional.regionCode()));
-            }
+            checkRequestTriesLimit(accountRequestCounters.requestsPerRegion(region, now), region.getMaxRequestsPerHour(),
+                    String.format("too many create account requests for region '%s' ", region.getRegionCode()));
         }
 
         //noinspection LocalVariableNamingConvention
         final String testAccountRegistrationCode = searchTestAccountRegistrationCode(simlarId.get());
         final AccountCreationRequestCount dbEntry = updateRequestTries(simlarId, type, ip, now, testAccountRegistrationCode);
+        accountRequestCounters.add(ip, simlarId, now);
         checkRequestTriesLimit(dbEntry.getRequestTries() - 1, createAccountSettings.getMaxRequestsPerSimlarIdPerDay(),
                 String.format("too many create account requests with number '%s'", telephoneNumber));
 
@@ -155,26 +160,42 @@ public final class AccountService {
             dbEntry.setConfirmTries(0);
         }
 
+        dbEntry.setPassword(Password.generate());
         if (StringUtils.isEmpty(testAccountRegistrationCode)) {
             final String smsMessage = SmsText.create(smsText, dbEntry.getRegistrationCode());
-            if (!smsService.sendSms(telephoneNumber, smsMessage)) {
-                throw new XmlErrorFailedToSendSmsException("failed to send sms to '" + telephoneNumber + "' with text: " + smsMessage);
-            }
+            // every request sends the sms again, e.g. if the previous one did not arrive
+            final String idempotencyKey = "request:" + type + ':' + simlarId + ':' + dbEntry.getRegistrationCodeTimestamp().toEpochMilli() + ':' + dbEntry.getRequestTries();
+            sendSms(telephoneNumber, smsMessage, idempotencyKey, () -> accountCreationRepository.save(dbEntry));
+        } else {
+            accountCreationRepository.save(dbEntry);
         }
 
-        dbEntry.setPassword(Password.generate());
-        accountCreationRepository.save(dbEntry);
-
         taskScheduler.schedule(() -> {
             if (!subscriberService.checkCredentials(dbEntry.getSimlarId(), dbEntry.getPassword())) {
                 log.warn("no confirmation after '{}' for number '{}'", WARN_TIMEOUT, telephoneNumber);
             }
         }, now.plus(WARN_TIMEOUT));
 
-        log.info("created account request with type '{}' for simlarId '{}'", type, simlarId);
+        final RegionTrie.Region region = accountRequestCounters.findRegion(simlarId);
+        log.info("created account request with type '{}' for simlarId '{}' in region '{}'", type, simlarId, region == null ? null : region.getRegionCode());
         return new AccountRequest(simlarId, dbEntry.getPassword());
     }
 
+    /**
+     * Queues the sms in the outbox and saves the changes along with it.
+     * Without outbox, the sms is sent synchronously and the changes are only saved if sending succeeded.
+     */
+    private void sendSms(final String telephoneNumber, final String smsMessage, final String idempotencyKey, final Runnable saveChanges) {
+        if (smsOutboxService.enqueue(TwilioRequestType.SMS, telephoneNumber, smsMessage, idempotencyKey, saveChanges)) {
+            return;
+        }
+
+        if (!smsService.sendSms(telephoneNumber, smsMessage)) {
+            throw new XmlErrorFailedToSendSmsException("failed to send sms to '" + telephoneNumber + "' with text: " + smsMessage);
+        }
+        saveChanges.run();
+    }
+
     private String searchTestAccountRegistrationCode(final CharSequence simlarId) {
         for (final TestAccount testAccount : createAccountSettings.getTestAccounts()) {
             if (Strings.CS.equals(simlarId, testAccount.simlarId())) {
@@ -233,13 +254,15 @@ public final class AccountService {
     }
 
     @SuppressWarnings("NonBooleanMethodNameMayNotStartWithQuestion")
-    private void checkRequestTriesLimitWithAlert(final Integer requests, final int limit, final String message) {
+    private void checkRequestTriesLimitWithAlert(final Integer requests, final int limit, final String message, final Instant now) {
         final int requestTries = ObjectUtils.getIfNull(requests, 0);
         if (requestTries == limit / 2) {
             final String smsMessage = String.format("50%% Alert for %s %d", message, requestTries);
             log.warn(smsMessage);
             for (final String alertNumber : createAccountSettings.getAlertSmsNumbers()) {
-                smsService.sendSms(alertNumber, smsMessage);
+                if (!smsOutboxService.enqueue(TwilioRequestType.SMS, alertNumber, smsMessage, "alert:" + alertNumber + ':' + now.toEpochMilli(), () -> {})) {
+                    smsService.sendSms(alertNumber, smsMessage);
+                }
             }
         } else {
             checkRequestTriesLimit(requestTries, limit, message);
@@ -290,12 +313,16 @@ public final class AccountService {
             throw new XmlErrorCallNotAllowedAtTheMomentException("aborting call to " + simlarId + " because too many calls within the last 24 hours");
         }
 
-        if (!smsService.call(telephoneNumber, CallText.format(dbEntry.getRegistrationCode()))) {
-            throw new XmlErrorFailedToTriggerCallException("failed to trigger call for simlarId: " + simlarId);
-        }
-
+        final String callText = CallText.format(dbEntry.getRegistrationCode());
+        // every call allowed by maxCalls triggers a call again
+        final String idempotencyKey = "call:" + simlarId + ':' + dbEntry.getTimestamp().toEpochMilli() + ':' + dbEntry.getCalls();
         dbEntry.setCallTimestamp(now);
-        accountCreationRepository.save(dbEntry);
+        if (!smsOutboxService.enqueue(TwilioRequestType.CALL, telephoneNumber, callText, idempotencyKey, () -> accountCreationRepository.save(dbEntry))) {
+            if (!smsService.call(telephoneNumber, callText)) {
+                throw new XmlErrorFailedToTriggerCallException("failed to trigger call for simlarId: " + simlarId);
+            }
+            accountCreationRepository.save(dbEntry);
+        }
 
         return simlarId;
     }
@@ -365,6 +392,7 @@ public final class AccountService {
 
         subscriberService.deleteBySimlarId(simlarId);
         pushNotificationsRepository.deleteBySimlarId(simlarId.get());
+        pushRegistrationCache.invalidate(simlarId);
         log.info("deleted account with simlarId '{}'", simlarId);
     }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.accountservice;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simlar.simlarserver.utils.SimlarId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Regional settings compiled into a digit trie keyed by region code.
+ * <p>
+ * A lookup walks the simlarId's digits once, so it costs the same for hundreds of regions as for one.
+ * Every region keeps its request counter on its node. Duplicate region codes are merged using the lowest limit.
+ */
+@Slf4j
+final class RegionTrie {
+    private static final int MINUTES_PER_HOUR = 60;
+
+    private final Node root = new Node();
+    private final int size;
+
+    static final class Region {
+        private final String regionCode;
+        private final int maxRequestsPerHour;
+        private final SlidingWindowCounter requestsPerHour = new SlidingWindowCounter(MINUTES_PER_HOUR);
+
+        private Region(final String regionCode, final int maxRequestsPerHour) {
+            this.regionCode = regionCode;
+            this.maxRequestsPerHour = maxRequestsPerHour;
+        }
+
+        String getRegionCode() {
+            return regionCode;
+        }
+
+        int getMaxRequestsPerHour() {
+            return maxRequestsPerHour;
+        }
+
+        SlidingWindowCounter getRequestsPerHour() {
+            return requestsPerHour;
+        }
+    }
+
+    private static final class Node {
+        private final Node[] children = new Node[10];
+        private Region region;
+    }
+
+    RegionTrie(final Collection<RegionalSettings> regionalSettings) {
+        final Map<String, Integer> limits = new LinkedHashMap<>();
+        for (final RegionalSettings regional : regionalSettings) {
+            if (isDigits(regional.regionCode())) {
+                limits.merge(regional.regionCode(), regional.maxRequestsPerHour(), Math::min);
+            } else {
+                log.warn("ignoring regional setting with region code '{}'", regional.regionCode());
+            }
+        }
+
+        for (final Map.Entry<String, Integer> limit : limits.entrySet()) {
+            Node node = root;
+            for (final char digit : limit.getKey().toCharArray()) {
+                final int index = digit - '0';
+                if (node.children[index] == null) {
+                    node.children[index] = new Node();
+                }
+                node = node.children[index];
+            }
+            node.region = new Region(limit.getKey(), limit.getValue());
+        }
+
+        size = limits.size();
+    }
+
+    private static boolean isDigits(final String regionCode) {
+        return regionCode != null && regionCode.chars().allMatch(c -> c >= '0' && c <= '9');
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return all regions the simlarId belongs to, from the shortest to the longest region code
+     */
+    List<Region> findAll(final SimlarId simlarId) {
+        List<Region> regions = Collections.emptyList();
+        final String digits = simlarId.get();
+        Node node = root;
+        for (int i = 1; node != null; i++) {
+            if (node.region != null) {
+                if (regions.isEmpty()) {
+                    regions = new ArrayList<>(2);
+                }
+                regions.add(node.region);
+            }
+
+            node = i < digits.length() ? child(node, digits.charAt(i)) : null;
+        }
+
+        return regions;
+    }
+
+    /**
+     * @return the region with the longest region code the simlarId belongs to, null if none
+     */
+    Region findLongest(final SimlarId simlarId) {
+        Region longest = null;
+        final String digits = simlarId.get();
+        Node node = root;
+        for (int i = 1; node != null; i++) {
+            if (node.region != null) {
+                longest = node.region;
+            }
+
+            node = i < digits.length() ? child(node, digits.charAt(i)) : null;
+        }
+
+        return longest;
+    }
+
+    private static Node child(final Node node, final char digit) {
+        return digit >= '0' && digit <= '9' ? node.children[digit - '0'] : null;
+    }
+}
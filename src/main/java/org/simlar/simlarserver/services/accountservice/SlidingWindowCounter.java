@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.accountservice;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Counts events within a sliding window of minutes using a ring buffer with one bucket per minute.
+ * <p>
+ * The total is kept up to date while the window slides, so adding and summing is O(1) amortized.
+ */
+final class SlidingWindowCounter {
+    private final int[] buckets;
+    private long newestMinute = Long.MIN_VALUE;
+    private long total;
+
+    SlidingWindowCounter(final int minutes) {
+        buckets = new int[minutes];
+    }
+
+    private static long toMinute(final Instant instant) {
+        return Math.floorDiv(instant.getEpochSecond(), 60);
+    }
+
+    private int index(final long minute) {
+        return (int) Math.floorMod(minute, buckets.length);
+    }
+
+    synchronized void add(final Instant time, final int count) {
+        final long minute = toMinute(time);
+        slide(minute);
+        if (minute <= newestMinute - buckets.length) {
+            return;
+        }
+
+        buckets[index(minute)] += count;
+        total += count;
+    }
+
+    synchronized int sum(final Instant now) {
+        slide(toMinute(now));
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    private void slide(final long minute) {
+        if (minute <= newestMinute) {
+            return;
+        }
+
+        if (newestMinute == Long.MIN_VALUE || minute - newestMinute >= buckets.length) {
+            Arrays.fill(buckets, 0);
+            total = 0;
+        } else {
+            for (long expired = newestMinute + 1; expired <= minute; expired++) {
+                final int index = index(expired);
+                total -= buckets[index];
+                buckets[index] = 0;
+            }
+        }
+
+        newestMinute = minute;
+    }
+}
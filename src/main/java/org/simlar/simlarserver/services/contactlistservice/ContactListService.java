@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.contactlistservice;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+import org.simlar.simlarserver.database.models.ContactList;
+import org.simlar.simlarserver.database.repositories.ContactListRepository;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorContactListOutOfSyncException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the last contact list of every user, so clients may send changes instead of their complete contact list.
+ * <p>
+ * Every update increments the list's version. A client has to send the version and hash it received last.
+ * If they do not match, the client has to send its complete contact list without version again.
+ */
+@Slf4j
+@Component
+public final class ContactListService {
+    private final ContactListRepository contactListRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired // fix IntelliJ inspection warning unused
+    private ContactListService(final ContactListRepository contactListRepository, final PlatformTransactionManager transactionManager) {
+        this.contactListRepository = contactListRepository;
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    private static String join(final Stream<SimlarId> simlarIds) {
+        return simlarIds.map(SimlarId::get).collect(Collectors.joining("|"));
+    }
+
+    private static Set<SimlarId> parse(final String simlarIds) {
+        return new HashSet<>(SimlarId.parsePipeSeparatedSimlarIds(simlarIds));
+    }
+
+    @SuppressWarnings("NonBooleanMethodNameMayNotStartWithQuestion")
+    private static void checkInSync(final SimlarId simlarId, final ContactList saved, final long version, final String hash) {
+        if (saved == null) {
+            throw new XmlErrorContactListOutOfSyncException("no contact list saved for simlarId=" + simlarId);
+        }
+
+        if (saved.getVersion() != version) {
+            throw new XmlErrorContactListOutOfSyncException("simlarId=" + simlarId + " requested version=" + version + " but saved version=" + saved.getVersion());
+        }
+
+        if (StringUtils.isNotEmpty(hash) && !Strings.CS.equals(saved.getHash(), hash)) {
+            throw new XmlErrorContactListOutOfSyncException("simlarId=" + simlarId + " requested hash=" + hash + " but saved hash=" + saved.getHash());
+        }
+    }
+
+    /**
+     * Applies changes to the saved contact list without saving them.
+     *
+     * @param version
+     *            the version the changes are based on, null to start a new list
+     * @return the complete sorted contact list after applying the changes
+     */
+    public SortedSet<SimlarId> applyChanges(final SimlarId simlarId, final Long version, final String hash, final Collection<SimlarId> added, final Collection<SimlarId> removed) {
+        final Set<SimlarId> contacts = new HashSet<>();
+        if (version != null) {
+            final ContactList saved = contactListRepository.findBySimlarId(simlarId.get());
+            checkInSync(simlarId, saved, version, hash);
+            contacts.addAll(parse(saved.getContacts()));
+        }
+
+        contacts.removeAll(removed);
+        contacts.addAll(added);
+        return SimlarId.sortAndUnifySimlarIds(contacts);
+    }
+
+    /**
+     * Saves a new version of the contact list and calculates the status changes since the previous version.
+     *
+     * @param version
+     *            the version the contact list is based on, null for a new list
+     * @param contacts
+     *            the complete contact list as returned by {@link #applyChanges}
+     * @param registered
+     *            the contacts currently registered
+     */
+    public ContactListDelta save(final SimlarId simlarId, final Long version, final SortedSet<SimlarId> contacts, final Collection<SimlarId> registered, final Instant now) {
+        return transactionTemplate.execute(status -> {
+            final ContactList saved = contactListRepository.findBySimlarIdForUpdate(simlarId.get());
+
+            final Set<SimlarId> previousContacts;
+            final Set<SimlarId> previousRegistered;
+            if (version == null) {
+                previousContacts = Collections.emptySet();
+                previousRegistered = Collections.emptySet();
+            } else {
+                checkInSync(simlarId, saved, version, null);
+                previousContacts = parse(saved.getContacts());
+                previousRegistered = parse(saved.getRegistered());
+            }
+
+            final Set<SimlarId> registeredSet = new HashSet<>(registered);
+            final Map<SimlarId, Boolean> statusChanges = new LinkedHashMap<>();
+            for (final SimlarId contact : contacts) {
+                final boolean isRegistered = registeredSet.contains(contact);
+                if (!previousContacts.contains(contact) || previousRegistered.contains(contact) != isRegistered) {
+                    statusChanges.put(contact, isRegistered);
+                }
+            }
+
+            final long newVersion = saved == null ? 1 : saved.getVersion() + 1;
+            final String hash = SimlarId.hashSimlarIds(contacts);
+            contactListRepository.save(new ContactList(simlarId.get(), newVersion, hash,
+                    join(contacts.stream()),
+                    join(contacts.stream().filter(registeredSet::contains)),
+                    now));
+
+            log.info("saved contact list version '{}' with '{}' contacts and '{}' status changes for simlarId '{}'", newVersion, contacts.size(), statusChanges.size(), simlarId);
+            return new ContactListDelta(newVersion, hash, statusChanges);
+        });
+    }
+}
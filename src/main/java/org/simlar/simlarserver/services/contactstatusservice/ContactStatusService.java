@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.contactstatusservice;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simlar.simlarserver.services.subscriberservice.SubscriberService;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Detects the registration status of delayed contact requests in batches.
+ * <p>
+ * Requests scheduled within the same time bucket are executed together, so the union of their contacts
+ * is looked up only once. The registered contacts are passed to every request's callback.
+ * If the lookup fails, the exception is passed to every request's failure callback instead.
+ */
+@Slf4j
+@Component
+public final class ContactStatusService {
+    private final ContactStatusSettings settings;
+    private final SubscriberService subscriberService;
+    private final TaskScheduler taskScheduler;
+
+    private final ConcurrentMap<Long, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private record Request(Collection<SimlarId> contacts, Consumer<Set<SimlarId>> callback, Consumer<RuntimeException> failure) {
+    }
+
+    private static final class Bucket {
+        private final List<Request> requests = new ArrayList<>();
+        private boolean closed;
+
+        @SuppressWarnings("BooleanMethodNameMustStartWithQuestion")
+        synchronized boolean add(final Request request) {
+            if (closed) {
+                return false;
+            }
+
+            requests.add(request);
+            return true;
+        }
+
+        synchronized List<Request> close() {
+            closed = true;
+            return requests;
+        }
+    }
+
+    @Autowired // fix IntelliJ inspection warning unused
+    private ContactStatusService(final ContactStatusSettings settings, final SubscriberService subscriberService, final TaskScheduler taskScheduler) {
+        this.settings = settings;
+        this.subscriberService = subscriberService;
+        this.taskScheduler = taskScheduler;
+
+        log.info("contact status bucket duration '{}'", settings.bucketDuration());
+    }
+
+    /**
+     * Schedules the status detection of contacts.
+     *
+     * @param time
+     *            the earliest time to detect the status, rounded up to the end of its bucket
+     * @param contacts
+     *            the contacts to detect the status for
+     * @param callback
+     *            called with all registered contacts of the bucket, which may contain contacts of other requests
+     * @param failure
+     *            called instead of callback if the detection fails
+     */
+    public void schedule(final Instant time, final Collection<SimlarId> contacts, final Consumer<Set<SimlarId>> callback, final Consumer<RuntimeException> failure) {
+        final long bucketMillis = settings.bucketMillis();
+        final long key = Math.floorDiv(time.toEpochMilli() + bucketMillis - 1, bucketMillis);
+        final Request request = new Request(contacts, callback, failure);
+
+        //noinspection StatementWithEmptyBody
+        while (!buckets.computeIfAbsent(key, this::createBucket).add(request)) {
+            // bucket already executed, the next iteration creates a new one
+        }
+    }
+
+    private Bucket createBucket(final long key) {
+        final Bucket bucket = new Bucket();
+        taskScheduler.schedule(() -> execute(key, bucket), Instant.ofEpochMilli(key * settings.bucketMillis()));
+        return bucket;
+    }
+
+    private void execute(final long key, final Bucket bucket) {
+        buckets.remove(key, bucket);
+        final List<Request> requests = bucket.close();
+
+        final Instant begin = Instant.now();
+        final Set<SimlarId> contacts = new HashSet<>();
+        for (final Request request : requests) {
+            contacts.addAll(request.contacts());
+        }
+
+        final Set<SimlarId> registered;
+        try {
+            registered = new HashSet<>(subscriberService.filterSimlarIdsRegistered(contacts));
+        } catch (final RuntimeException e) {
+            log.error("detecting registered contacts failed for '{}' requests", requests.size(), e);
+            notifyRequests(requests, request -> request.failure().accept(e));
+            return;
+        }
+        log.info("detected '{}' registered of '{}' contacts for '{}' requests in '{}' ms", registered.size(), contacts.size(), requests.size(), Duration.between(begin, Instant.now()).toMillis());
+
+        notifyRequests(requests, request -> request.callback().accept(registered));
+    }
+
+    private static void notifyRequests(final Iterable<Request> requests, final Consumer<Request> notification) {
+        for (final Request request : requests) {
+            try {
+                notification.accept(request);
+            } catch (final RuntimeException e) {
+                log.error("contact status callback failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.delaycalculatorservice;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.ListUtils;
+import org.simlar.simlarserver.database.models.ContactsRequestCount;
+import org.simlar.simlarserver.database.repositories.ContactsRequestCountRepository;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the contacts request counters in memory and writes them behind to the database.
+ * <p>
+ * The counters are loaded from the database on start up. Until then, unknown counters are read from the database.
+ * Changed counters are flushed periodically and on shutdown. Counters not updated for a day are dropped,
+ * because they would be reset anyway.
+ * A flush adds the requests counted since the last flush, so the requests counted by other server instances,
+ * either in memory or by {@link ContactsRequestCountRepository#upsert}, are kept in the database.
+ * Each instance only sees the requests of other instances counted before it loaded a counter.
+ */
+@Slf4j
+@Component
+final class ContactsRequestCounters implements DisposableBean {
+    private final ContactsRequestCountSettings settings;
+    private final ContactsRequestCountRepository contactsRequestCountRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+
+    private final ConcurrentMap<String, RequestCount> counters = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private ContactsRequestCounters(final ContactsRequestCountSettings settings, final ContactsRequestCountRepository contactsRequestCountRepository, final PlatformTransactionManager transactionManager, final TaskScheduler taskScheduler) {
+        this.settings = settings;
+        this.contactsRequestCountRepository = contactsRequestCountRepository;
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        this.taskScheduler = taskScheduler;
+    }
+
+    @SuppressWarnings({"unused", "RedundantSuppression"})
+    @EventListener
+    public void handleApplicationReadyEvent(final ApplicationReadyEvent event) {
+        if (!settings.enabled()) {
+            log.info("contacts request counters write behind disabled");
+            return;
+        }
+
+        load(Instant.now());
+        taskScheduler.scheduleWithFixedDelay(() -> flush(Instant.now()), settings.flushInterval());
+    }
+
+    boolean isEnabled() {
+        return settings.enabled();
+    }
+
+    int calculateTotalRequestedContacts(final SimlarId simlarId, final Instant now, final String hash, final int count) {
+        final String key = simlarId.get();
+        if (!loaded && !counters.containsKey(key)) {
+            // read outside of compute, which would block other keys during the query
+            final ContactsRequestCount saved = contactsRequestCountRepository.findBySimlarId(key);
+            if (saved != null) {
+                counters.putIfAbsent(key, RequestCount.saved(saved));
+            }
+        }
+
+        return counters.compute(key, (ignored, current) -> current == null
+                ? RequestCount.create(now, hash, count)
+                : current.add(now, hash, count, DelayCalculatorService.RESET_COUNTER)).count();
+    }
+
+    void load(final Instant now) {
+        final Instant begin = Instant.now();
+        final Instant updatedSince = now.minus(DelayCalculatorService.RESET_COUNTER);
+        try {
+            String lastSimlarId = "";
+            int count = 0;
+            while (true) {
+                final List<ContactsRequestCount> page = contactsRequestCountRepository.findUpdatedSince(lastSimlarId, updatedSince, PageRequest.ofSize(settings.batchSize()));
+                for (final ContactsRequestCount saved : page) {
+                    counters.putIfAbsent(saved.getSimlarId(), RequestCount.saved(saved));
+                }
+                count += page.size();
+
+                if (page.size() < settings.batchSize()) {
+                    break;
+                }
+                lastSimlarId = page.getLast().getSimlarId();
+            }
+
+            loaded = true;
+            log.info("loaded '{}' contacts request counters in '{}' ms", count, Duration.between(begin, Instant.now()).toMillis());
+        } catch (final DataAccessException e) {
+            log.error("loading contacts request counters failed, reading them on demand", e);
+        }
+    }
+
+    void flush(final Instant now) {
+        final List<Map.Entry<String, RequestCount>> dirty = counters.entrySet().stream()
+                .filter(entry -> entry.getValue().dirty())
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+                .toList();
+
+        for (final List<Map.Entry<String, RequestCount>> batch : ListUtils.partition(dirty, settings.batchSize())) {
+            try {
+                save(batch);
+            } catch (final DataAccessException e) {
+                log.error("flushing '{}' contacts request counters failed", dirty.size(), e);
+                return;
+            }
+
+            for (final Map.Entry<String, RequestCount> entry : batch) {
+                counters.computeIfPresent(entry.getKey(), (key, current) -> current.flushed(entry.getValue()));
+            }
+        }
+
+        final Instant expired = now.minus(DelayCalculatorService.RESET_COUNTER);
+        counters.entrySet().removeIf(entry -> !entry.getValue().dirty() && entry.getValue().timestamp().isBefore(expired));
+
+        if (!dirty.isEmpty()) {
+            log.info("flushed '{}' contacts request counters, keeping '{}'", dirty.size(), counters.size());
+        }
+    }
+
+    private void save(final List<Map.Entry<String, RequestCount>> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (final Map.Entry<String, RequestCount> entry : batch) {
+                final RequestCount requestCount = entry.getValue();
+                contactsRequestCountRepository.add(entry.getKey(), requestCount.timestamp(), requestCount.hash(), requestCount.delta(),
+                        requestCount.timestamp().minus(DelayCalculatorService.RESET_COUNTER));
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (settings.enabled()) {
+            flush(Instant.now());
+        }
+    }
+}
@@ -23,8 +23,6 @@ package org.simlar.simlarserver.services.delaycalculatorservice;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
-import org.apache.commons.lang3.Strings;
-import org.simlar.simlarserver.database.models.ContactsRequestCount;
 import org.simlar.simlarserver.database.repositories.ContactsRequestCountRepository;
 import org.simlar.simlarserver.utils.SimlarId;
 import org.springframework.stereotype.Component;
@@ -41,14 +39,16 @@ import java.util.SortedSet;
 public final class DelayCalculatorService {
     public static final Duration MAXIMUM = Duration.ofSeconds(Long.MAX_VALUE);
 
-    private static final Duration RESET_COUNTER = Duration.ofDays(1); // reset counter after one day
+    static final Duration RESET_COUNTER = Duration.ofDays(1); // reset counter after one day
 
     private final ContactsRequestCountRepository contactsRequestCountRepository;
+    private final ContactsRequestCounters contactsRequestCounters;
     private final TransactionTemplate transactionTemplate;
 
     @SuppressWarnings("unused")
-    private DelayCalculatorService(final ContactsRequestCountRepository contactsRequestCountRepository, final PlatformTransactionManager transactionManager) {
+    private DelayCalculatorService(final ContactsRequestCountRepository contactsRequestCountRepository, final ContactsRequestCounters contactsRequestCounters, final PlatformTransactionManager transactionManager) {
         this.contactsRequestCountRepository = contactsRequestCountRepository;
+        this.contactsRequestCounters = contactsRequestCounters;
         transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
@@ -63,43 +63,14 @@ public final class DelayCalculatorService {
     }
 
     private Integer calculateTotalRequestedContacts(final SimlarId simlarId, final Instant now, final String hash, final int count) {
-        return transactionTemplate.execute(status -> {
-            final ContactsRequestCount saved = contactsRequestCountRepository.findBySimlarId(simlarId.get());
-
-            if (saved != null && count == 1 && !Strings.CS.equals(saved.getHash(), hash)) {
-                saved.incrementCount();
-                saved.setTimestamp(now);
-                contactsRequestCountRepository.save(saved);
-                return saved.getCount();
-            }
-
-            final int totalCount = calculateTotalRequestedContactsStatic(saved, now, hash, count);
-            contactsRequestCountRepository.save(new ContactsRequestCount(simlarId, now, hash, totalCount));
-            return totalCount;
-        });
-    }
-
-    @SuppressWarnings("TypeMayBeWeakened") // Instant instead of Temporal
-    private static int calculateTotalRequestedContactsStatic(final ContactsRequestCount saved, final Instant now, final String hash, final int count) {
-        if (saved == null) {
-            return count;
+        if (contactsRequestCounters.isEnabled()) {
+            return contactsRequestCounters.calculateTotalRequestedContacts(simlarId, now, hash, count);
         }
 
-        final boolean enoughTimeElapsed = Duration.between(saved.getTimestamp().plus(RESET_COUNTER), now).compareTo(Duration.ZERO) > 0;
-
-        return calculateTotalRequestedContactsStatic(enoughTimeElapsed, Strings.CS.equals(hash, saved.getHash()), saved.getCount(), count);
-    }
-
-    private static int calculateTotalRequestedContactsStatic(final boolean enoughTimeElapsed, final boolean hashIsEqual, final int savedCount, final int count) {
-        if (enoughTimeElapsed) {
-            return count;
-        }
-
-        if (hashIsEqual) {
-            return Math.max(savedCount, count);
-        }
-
-        return savedCount + count;
+        return transactionTemplate.execute(status -> {
+            contactsRequestCountRepository.upsert(simlarId.get(), now, hash, count, now.minus(RESET_COUNTER));
+            return contactsRequestCountRepository.findCountBySimlarId(simlarId.get());
+        });
     }
 
     static Duration calculateDelay(final int requestedContacts) {
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.delaycalculatorservice;
+
+import org.apache.commons.lang3.Strings;
+import org.simlar.simlarserver.database.models.ContactsRequestCount;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * In memory counterpart of {@link ContactsRequestCount} following the rules of
+ * {@link org.simlar.simlarserver.database.repositories.ContactsRequestCountRepository#upsert}.
+ * <p>
+ * The delta is the part of the count not flushed to the database yet. Started is the time of the last reset.
+ */
+record RequestCount(Instant started, Instant timestamp, String hash, int count, int delta, boolean dirty) {
+    static RequestCount create(final Instant now, final String hash, final int count) {
+        return new RequestCount(now, now, hash, count, count, true);
+    }
+
+    static RequestCount saved(final ContactsRequestCount saved) {
+        return new RequestCount(saved.getTimestamp(), saved.getTimestamp(), saved.getHash(), saved.getCount(), 0, false);
+    }
+
+    RequestCount add(final Instant now, final String requestedHash, final int requestedCount, final Duration resetCounter) {
+        if (requestedCount == 1 && !Strings.CS.equals(hash, requestedHash)) {
+            return new RequestCount(started, now, hash, count + 1, delta + 1, true);
+        }
+
+        if (timestamp.isBefore(now.minus(resetCounter))) {
+            return create(now, requestedHash, requestedCount);
+        }
+
+        final int newCount = Strings.CS.equals(hash, requestedHash) ? Math.max(count, requestedCount) : count + requestedCount;
+        return new RequestCount(started, now, requestedHash, newCount, delta + newCount - count, true);
+    }
+
+    /**
+     * @param saved the state flushed to the database, changes since then stay dirty
+     */
+    RequestCount flushed(final RequestCount saved) {
+        if (!started.equals(saved.started())) {
+            // reset since the flush, so the flushed delta is not part of this one
+            return this;
+        }
+
+        //noinspection ObjectEquality
+        return new RequestCount(started, timestamp, hash, count, delta - saved.delta(), this != saved);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Stops requesting a provider after consecutive failures.
+ * After the open duration a single probe request is let through, its result closes or reopens the breaker.
+ */
+@Slf4j
+final class PushCircuitBreaker {
+    enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final PushProvider provider;
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final MeterRegistry meterRegistry;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    PushCircuitBreaker(final PushProvider provider, final int failureThreshold, final Duration openDuration, final MeterRegistry meterRegistry) {
+        this.provider = provider;
+        this.failureThreshold = failureThreshold;
+        openDurationNanos = openDuration.toNanos();
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("simlar.push.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("0 closed, 1 half open, 2 open")
+                .tag("provider", tagValue())
+                .register(meterRegistry);
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return false if the request must not be sent to the provider
+     */
+    synchronized boolean tryAcquire() {
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> {
+                if (probing) {
+                    yield false;
+                }
+                probing = true;
+                yield true;
+            }
+            case OPEN -> {
+                if (System.nanoTime() - openedAt < openDurationNanos) {
+                    yield false;
+                }
+                transition(State.HALF_OPEN);
+                probing = true;
+                yield true;
+            }
+        };
+    }
+
+    synchronized void onSuccess() {
+        failures = 0;
+        probing = false;
+        if (state != State.CLOSED) {
+            transition(State.CLOSED);
+        }
+    }
+
+    /**
+     * The acquired request has not been sent to the provider.
+     */
+    synchronized void release() {
+        probing = false;
+    }
+
+    synchronized void onFailure() {
+        probing = false;
+        failures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+            openedAt = System.nanoTime();
+            transition(State.OPEN);
+        }
+    }
+
+    private void transition(final State newState) {
+        log.warn("circuit breaker of provider '{}' changes from '{}' to '{}' after '{}' failures", provider, state, newState, failures);
+        state = newState;
+        meterRegistry.counter("simlar.push.circuit.transitions", "provider", tagValue(), "state", newState.name().toLowerCase(Locale.ROOT)).increment();
+    }
+
+    private String tagValue() {
+        return provider.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+@ConfigurationProperties(prefix = "push.dispatch")
+record PushDispatchSettings(
+        @DefaultValue("8")
+        int threadsPerProvider,
+
+        @DefaultValue("64")
+        int queueCapacity,
+
+        @DefaultValue("5s")
+        Duration appleTimeout,
+
+        @DefaultValue("5s")
+        Duration googleTimeout,
+
+        @DefaultValue("5")
+        int failureThreshold,
+
+        @DefaultValue("30s")
+        Duration openDuration,
+
+        @DefaultValue("2")
+        int maxAttempts,
+
+        @DefaultValue("100ms")
+        Duration retryBackoff,
+
+        @DefaultValue("false")
+        boolean hedging) {
+
+    /**
+     * Backoff before the given retry with full jitter, doubling per attempt.
+     */
+    long retryBackoffMillis(final int attempt) {
+        final long max = retryBackoff.toMillis() << Math.min(attempt - 1, 10);
+        return max <= 0 ? 0 : ThreadLocalRandom.current().nextLong(max + 1);
+    }
+
+    Duration timeout(final PushProvider provider) {
+        return switch (provider) {
+            case APPLE -> appleTimeout;
+            case GOOGLE -> googleTimeout;
+        };
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent successful requests to a provider.
+ */
+final class PushLatencies {
+    private static final int MIN_SAMPLES = 20;
+
+    private final long[] nanos;
+    private int next;
+    private int count;
+
+    PushLatencies(final int capacity) {
+        nanos = new long[capacity];
+    }
+
+    synchronized void record(final long latencyNanos) {
+        nanos[next] = latencyNanos;
+        next = (next + 1) % nanos.length;
+        count = Math.min(count + 1, nanos.length);
+    }
+
+    /**
+     * @return the 95th percentile or null if there are too few samples yet
+     */
+    @Nullable
+    synchronized Duration percentile95() {
+        if (count < MIN_SAMPLES) {
+            return null;
+        }
+
+        final long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        return Duration.ofNanos(sorted[(int) Math.ceil(0.95 * count) - 1]);
+    }
+}
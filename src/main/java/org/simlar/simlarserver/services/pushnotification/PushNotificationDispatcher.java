@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.nio.channels.UnresolvedAddressException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs push notification requests on a bounded thread pool per provider, so a slow provider only delays its own requests.
+ * <p>
+ * Transient failures are retried with jittered backoff within the provider's timeout.
+ * A circuit breaker per provider fails requests fast during a provider incident.
+ * If hedging is enabled, a second request is sent if the first one takes longer than the provider's recent 95th percentile.
+ * Hedging is disabled by default, because the callee may receive the push notification twice.
+ */
+@Slf4j
+@Component
+final class PushNotificationDispatcher implements DisposableBean {
+    private static final int LATENCY_SAMPLES = 200;
+
+    private final PushDispatchSettings settings;
+    private final MeterRegistry meterRegistry;
+    private final Map<PushProvider, ExecutorService> executors = new EnumMap<>(PushProvider.class);
+    private final Map<PushProvider, PushCircuitBreaker> circuitBreakers = new EnumMap<>(PushProvider.class);
+    private final Map<PushProvider, PushLatencies> latencies = new EnumMap<>(PushProvider.class);
+
+    private PushNotificationDispatcher(final PushDispatchSettings settings, final MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+
+        for (final PushProvider provider : PushProvider.values()) {
+            //noinspection ObjectAllocationInLoop
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(settings.threadsPerProvider(), settings.threadsPerProvider(), 1, TimeUnit.MINUTES,
+                    new ArrayBlockingQueue<>(settings.queueCapacity()), new CustomizableThreadFactory("push-" + provider.name().toLowerCase(Locale.ROOT) + '-'));
+            executor.allowCoreThreadTimeOut(true);
+            executors.put(provider, executor);
+            //noinspection ObjectAllocationInLoop
+            circuitBreakers.put(provider, new PushCircuitBreaker(provider, settings.failureThreshold(), settings.openDuration(), meterRegistry));
+            //noinspection ObjectAllocationInLoop
+            latencies.put(provider, new PushLatencies(LATENCY_SAMPLES));
+        }
+    }
+
+    /**
+     * @return a future completing exceptionally with a TimeoutException if the provider does not answer in time
+     * or with a RejectedExecutionException if too many requests are waiting for the provider or its circuit breaker is open
+     */
+    <T> CompletableFuture<T> dispatch(final PushProvider provider, final Supplier<T> request) {
+        final PushCircuitBreaker circuitBreaker = circuitBreakers.get(provider);
+        if (!circuitBreaker.tryAcquire()) {
+            log.warn("circuit breaker open for provider '{}'", provider);
+            return CompletableFuture.failedFuture(new RejectedExecutionException("circuit breaker open for provider " + provider));
+        }
+
+        final long begin = System.nanoTime();
+        try {
+            return hedge(provider, request, submit(provider, request, 1))
+                    .orTimeout(settings.timeout(provider).toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((result, throwable) -> {
+                        if (throwable == null) {
+                            latencies.get(provider).record(System.nanoTime() - begin);
+                            circuitBreaker.onSuccess();
+                        } else if (isProviderFailure(unwrap(throwable))) {
+                            circuitBreaker.onFailure();
+                        } else if (unwrap(throwable) instanceof RejectedExecutionException) {
+                            circuitBreaker.release();
+                        } else {
+                            circuitBreaker.onSuccess();
+                        }
+                    });
+        } catch (final RejectedExecutionException e) {
+            circuitBreaker.release();
+            log.warn("too many push notification requests waiting for provider '{}'", provider);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(final PushProvider provider, final Supplier<T> request, final int attempt) {
+        return CompletableFuture
+                .supplyAsync(request, executors.get(provider))
+                .exceptionallyCompose(throwable -> {
+                    final Throwable cause = unwrap(throwable);
+                    if (attempt >= settings.maxAttempts() || !isTransient(cause)) {
+                        return CompletableFuture.failedFuture(cause);
+                    }
+
+                    final long backoff = settings.retryBackoffMillis(attempt);
+                    log.info("retrying push notification request to provider '{}' in '{}' ms after '{}'", provider, backoff, cause.getClass().getSimpleName());
+                    meterRegistry.counter("simlar.push.retries", "provider", provider.name().toLowerCase(Locale.ROOT)).increment();
+                    return CompletableFuture
+                            .runAsync(() -> {}, CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> submit(provider, request, attempt + 1));
+                });
+    }
+
+    private <T> CompletableFuture<T> hedge(final PushProvider provider, final Supplier<T> request, final CompletableFuture<T> primary) {
+        final Duration delay = settings.hedging() ? latencies.get(provider).percentile95() : null;
+        if (delay == null) {
+            return primary;
+        }
+
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger running = new AtomicInteger(1);
+        final BiConsumer<T, Throwable> complete = (value, throwable) -> {
+            if (throwable == null) {
+                result.complete(value);
+            } else if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(throwable);
+            }
+        };
+
+        primary.whenComplete(complete);
+        CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+            if (!result.isDone() && running.incrementAndGet() > 1) {
+                meterRegistry.counter("simlar.push.hedges", "provider", provider.name().toLowerCase(Locale.ROOT)).increment();
+                try {
+                    submit(provider, request, settings.maxAttempts()).whenComplete(complete);
+                } catch (final RejectedExecutionException e) {
+                    complete.accept(null, e);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static Throwable unwrap(final Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    /**
+     * Too many requests, server errors and failed connections may succeed if requested again.
+     * Other io errors like read timeouts are not retried, because the provider may already have accepted the push notification.
+     */
+    static boolean isTransient(final Throwable throwable) {
+        if (throwable instanceof final HttpStatusCodeException e) {
+            return e.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value() || e.getStatusCode().is5xxServerError();
+        }
+
+        return throwable instanceof ResourceAccessException && isConnectFailure(throwable);
+    }
+
+    private static boolean isConnectFailure(final Throwable throwable) {
+        for (Throwable cause = throwable.getCause(); cause != null && cause != cause.getCause(); cause = cause.getCause()) {
+            if (cause instanceof ConnectException
+                    || cause instanceof HttpConnectTimeoutException
+                    || cause instanceof NoRouteToHostException
+                    || cause instanceof UnknownHostException
+                    || cause instanceof UnresolvedAddressException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isProviderFailure(final Throwable throwable) {
+        return throwable instanceof TimeoutException || throwable instanceof ResourceAccessException || isTransient(throwable);
+    }
+
+    @Override
+    public void destroy() {
+        executors.values().forEach(ExecutorService::shutdown);
+        log.info("shut down push notification executors '{}'", Arrays.toString(PushProvider.values()));
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification;
+
+import org.simlar.simlarserver.utils.SimlarId;
+
+/**
+ * Outcome of one push notification of a batch, either with a message id or with an error.
+ */
+public record PushNotificationResult(SimlarId callee, String messageId, String error) {
+    static PushNotificationResult success(final SimlarId callee, final String messageId) {
+        return new PushNotificationResult(callee, messageId, null);
+    }
+
+    static PushNotificationResult failure(final SimlarId callee, final String error) {
+        return new PushNotificationResult(callee, null, error);
+    }
+}
@@ -21,6 +21,7 @@
 
 package org.simlar.simlarserver.services.pushnotification;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -33,9 +34,22 @@ import org.simlar.simlarserver.services.pushnotification.apple.json.ApplePushNot
 import org.simlar.simlarserver.services.pushnotification.google.GooglePushNotificationService;
 import org.simlar.simlarserver.services.subscriberservice.SubscriberService;
 import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
 
 import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @SuppressWarnings("unused")
 @AllArgsConstructor
@@ -46,31 +60,192 @@ public final class PushNotificationService {
     private final SubscriberService subscriberService;
     private final ApplePushNotificationService applePushNotificationService;
     private final GooglePushNotificationService googlePushNotificationService;
+    private final PushNotificationDispatcher pushNotificationDispatcher;
+    private final PushTokenPruner pushTokenPruner;
+    private final PushRegistrationCache pushRegistrationCache;
+    private final PushCoalescingSettings coalescingSettings;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+    private final Map<Call, InFlight> inFlights = new ConcurrentHashMap<>();
+
+    private record PushRequest(PushProvider provider, Supplier<String> request) {
+    }
+
+    private record Call(SimlarId caller, SimlarId callee) {
+    }
+
+    private record InFlight(CompletableFuture<String> future, long started) {
+    }
 
     @SuppressWarnings("unused")
     @Nullable
     public String sendPushNotification(final SimlarId caller, final SimlarId callee) {
+        final PushRequest pushRequest = createPushRequest(caller, callee);
+        return pushRequest == null ? null : pushRequest.request().get();
+    }
+
+    /**
+     * Looks up the callee's device on the calling thread and requests the push notification on the provider's executor.
+     * If coalescing is enabled, requests with the same caller and callee within the window share one request to the provider.
+     * Only pending and successful requests are shared, a failed one is requested again.
+     *
+     * @return a future completing with the message id, with null if no push notification can be sent to the callee,
+     * or exceptionally if the provider fails or does not answer in time
+     */
+    public CompletableFuture<String> sendPushNotificationAsync(final SimlarId caller, final SimlarId callee) {
+        if (!coalescingSettings.enabled() || caller == null || callee == null) {
+            return requestPushNotificationAsync(caller, callee);
+        }
+
+        final Call call = new Call(caller, callee);
+        final long now = System.nanoTime();
+        final InFlight[] created = { null };
+        final InFlight inFlight = inFlights.compute(call, (key, existing) -> {
+            if (existing != null && !existing.future().isCompletedExceptionally() && (!existing.future().isDone() || now - existing.started() < coalescingSettings.window().toNanos())) {
+                return existing;
+            }
+
+            created[0] = new InFlight(new CompletableFuture<>(), now);
+            return created[0];
+        });
+
+        if (created[0] == null) {
+            log.info("coalescing push notification request with caller '{}' and callee '{}'", caller, callee);
+            meterRegistry.counter("simlar.push.coalesced").increment();
+            return inFlight.future().copy();
+        }
+
+        taskScheduler.schedule(() -> inFlight.future().whenComplete((messageId, throwable) -> inFlights.remove(call, inFlight)),
+                Instant.now().plus(coalescingSettings.window()));
+        try {
+            requestPushNotificationAsync(caller, callee).whenComplete((messageId, throwable) -> {
+                if (throwable == null) {
+                    inFlight.future().complete(messageId);
+                } else {
+                    inFlights.remove(call, inFlight);
+                    inFlight.future().completeExceptionally(throwable);
+                }
+            });
+        } catch (final RuntimeException e) {
+            inFlights.remove(call, inFlight);
+            inFlight.future().completeExceptionally(e);
+        }
+        return inFlight.future().copy();
+    }
+
+    private CompletableFuture<String> requestPushNotificationAsync(final SimlarId caller, final SimlarId callee) {
+        final PushRequest pushRequest = createPushRequest(caller, callee);
+        return pushRequest == null
+                ? CompletableFuture.completedFuture(null)
+                : pushNotificationDispatcher.dispatch(pushRequest.provider(), pushRequest.request());
+    }
+
+    /**
+     * Requests push notifications to many callees concurrently.
+     * Devices and password hashes of all callees are looked up with one query each.
+     *
+     * @return a future completing with one result per distinct callee in the given order, it never completes exceptionally
+     */
+    public CompletableFuture<List<PushNotificationResult>> sendPushNotificationsAsync(final SimlarId caller, final Collection<SimlarId> callees) {
+        final List<SimlarId> distinctCallees = callees.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinctCallees.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        final Map<String, PushNotification> pushNotifications = pushNotificationsRepository.findBySimlarIdIn(distinctCallees.stream().map(SimlarId::get).toList()).stream()
+                .collect(Collectors.toMap(PushNotification::getSimlarId, Function.identity(), (first, second) -> first));
+
+        final List<SimlarId> appleCallees = distinctCallees.stream()
+                .filter(callee -> isApple(pushNotifications.get(callee.get())))
+                .toList();
+        final Map<SimlarId, String> passwordHashes = appleCallees.isEmpty() ? Map.of() : subscriberService.getHa1s(appleCallees);
+
+        final List<CompletableFuture<PushNotificationResult>> results = distinctCallees.stream()
+                .map(callee -> dispatch(callee, createPushRequest(caller, callee, pushNotifications.get(callee.get()), passwordHashes)))
+                .toList();
+
+        return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> results.stream().map(CompletableFuture::join).toList());
+    }
+
+    private static boolean isApple(@Nullable final PushNotification pushNotification) {
+        return pushNotification != null && isApple(pushNotification.getDeviceType());
+    }
+
+    private static boolean isApple(@Nullable final DeviceType deviceType) {
+        return deviceType == DeviceType.IOS_VOIP || deviceType == DeviceType.IOS_VOIP_DEVELOPMENT;
+    }
+
+    private CompletableFuture<PushNotificationResult> dispatch(final SimlarId callee, @Nullable final PushRequest pushRequest) {
+        if (pushRequest == null) {
+            return CompletableFuture.completedFuture(PushNotificationResult.failure(callee, "no supported device"));
+        }
+
+        return pushNotificationDispatcher.dispatch(pushRequest.provider(), pushRequest.request())
+                .handle((messageId, throwable) -> {
+                    if (throwable != null) {
+                        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                        log.error("push notification to callee '{}' failed with '{}'", callee, cause.getClass().getSimpleName());
+                        return PushNotificationResult.failure(callee, cause.getClass().getSimpleName());
+                    }
+
+                    return StringUtils.isBlank(messageId)
+                            ? PushNotificationResult.failure(callee, "no message id")
+                            : PushNotificationResult.success(callee, messageId);
+                });
+    }
+
+    @Nullable
+    private PushRequest createPushRequest(final SimlarId caller, final SimlarId callee) {
         if (callee == null) {
             return null;
         }
 
+        final PushRegistration registration = findPushRegistration(callee);
+        if (registration == null) {
+            return createPushRequest(caller, callee, null, null, null);
+        }
+
+        final String ha1 = isApple(registration.deviceType()) ? subscriberService.getHa1(callee) : null;
+        return createPushRequest(caller, callee, registration.deviceType(), registration.pushId(), ha1);
+    }
+
+    @Nullable
+    private PushRegistration findPushRegistration(final SimlarId callee) {
+        final PushRegistration cached = pushRegistrationCache.get(callee);
+        if (cached != null) {
+            return cached;
+        }
+
+        final long generation = pushRegistrationCache.generation();
         final PushNotification pushNotification = pushNotificationsRepository.findBySimlarId(callee.get());
-        final DeviceType deviceType = pushNotification == null ? null : pushNotification.getDeviceType();
+        if (pushNotification == null) {
+            return null;
+        }
+
+        final PushRegistration registration = new PushRegistration(pushNotification.getDeviceType(), pushNotification.getPushId());
+        pushRegistrationCache.put(callee, registration, generation);
+        return registration;
+    }
+
+    @Nullable
+    private PushRequest createPushRequest(final SimlarId caller, final SimlarId callee, @Nullable final PushNotification pushNotification, final Map<SimlarId, String> passwordHashes) {
+        return pushNotification == null
+                ? createPushRequest(caller, callee, null, null, null)
+                : createPushRequest(caller, callee, pushNotification.getDeviceType(), pushNotification.getPushId(), passwordHashes.get(callee));
+    }
+
+    @Nullable
+    private PushRequest createPushRequest(final SimlarId caller, final SimlarId callee, @Nullable final DeviceType deviceType, final String pushId, final String passwordHash) {
         if (deviceType == null) {
             log.error("no device type found for callee '{}'", callee);
             return null;
         }
 
         return switch (deviceType) {
-            case ANDROID -> googlePushNotificationService.requestPushNotification(pushNotification.getPushId());
-            case IOS_VOIP -> applePushNotificationService.requestVoipPushNotification(
-                    ApplePushServer.PRODUCTION,
-                    createCaller(caller, callee),
-                    pushNotification.getPushId());
-            case IOS_VOIP_DEVELOPMENT -> applePushNotificationService.requestVoipPushNotification(
-                    ApplePushServer.SANDBOX,
-                    createCaller(caller, callee),
-                    pushNotification.getPushId());
+            case ANDROID -> createPushRequest(PushProvider.GOOGLE, callee, pushId, () -> googlePushNotificationService.requestPushNotification(pushId));
+            case IOS_VOIP -> createApplePushRequest(ApplePushServer.PRODUCTION, createCaller(caller, callee, passwordHash), callee, pushId);
+            case IOS_VOIP_DEVELOPMENT -> createApplePushRequest(ApplePushServer.SANDBOX, createCaller(caller, callee, passwordHash), callee, pushId);
             case IOS, IOS_DEVELOPMENT -> {
                 log.error("unsupported device type '{}'", deviceType);
                 yield null;
@@ -78,8 +253,31 @@ public final class PushNotificationService {
         };
     }
 
-    private ApplePushNotificationRequestCaller createCaller(final SimlarId caller, final SimlarId callee) {
-        final String passwordHash = subscriberService.getHa1(callee);
+    private PushRequest createApplePushRequest(final ApplePushServer server, final ApplePushNotificationRequestCaller caller, final SimlarId callee, final String pushId) {
+        return createPushRequest(PushProvider.APPLE, callee, pushId, () -> applePushNotificationService.requestVoipPushNotification(server, caller, pushId));
+    }
+
+    private PushRequest createPushRequest(final PushProvider provider, final SimlarId callee, final String pushId, final Supplier<String> request) {
+        return new PushRequest(provider, () -> {
+            try {
+                return request.get();
+            } catch (final HttpStatusCodeException e) {
+                if (isUnregistered(provider, e)) {
+                    pushTokenPruner.prune(provider, callee, pushId);
+                }
+                throw e;
+            }
+        });
+    }
+
+    private static boolean isUnregistered(final PushProvider provider, final HttpStatusCodeException e) {
+        return switch (provider) {
+            case APPLE -> ApplePushNotificationService.isUnregistered(e);
+            case GOOGLE -> GooglePushNotificationService.isUnregistered(e);
+        };
+    }
+
+    private static ApplePushNotificationRequestCaller createCaller(final SimlarId caller, final SimlarId callee, final String passwordHash) {
         if (StringUtils.isEmpty(passwordHash)) {
             log.error("no password hash found for simlarId '{}'", callee.get());
             return null;
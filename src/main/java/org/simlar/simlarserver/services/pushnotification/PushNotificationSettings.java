@@ -22,9 +22,13 @@
 package org.simlar.simlarserver.services.pushnotification;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 
 @SuppressWarnings({"unused", "RedundantSuppression"})
 @ConfigurationProperties(prefix = "push")
 public record PushNotificationSettings(
-        String apiKey) {
+        String apiKey,
+
+        @DefaultValue("10")
+        int maxCallees) {
 }
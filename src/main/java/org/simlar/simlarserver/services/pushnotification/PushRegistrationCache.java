@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the device types and push ids of callees, so requesting a push notification to android needs no database query.
+ * <p>
+ * Entries expire after the time to live and the least recently used entry is evicted if the cache is full.
+ * Changes of push ids and deleted accounts invalidate the callee's entry, but only on the node handling the change.
+ * Other nodes keep using the previous push id until the entry expires, so the time to live should be short.
+ * Password hashes are not cached, because an outdated one would prevent iOS callees from decrypting the caller.
+ * A registration loaded while an invalidation happened is not cached, as it may be outdated.
+ */
+@Slf4j
+@Component
+public final class PushRegistrationCache {
+    private final PushRegistrationCacheSettings settings;
+    private final Counter hits;
+    private final Counter misses;
+    private final Map<SimlarId, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation;
+
+    private record Entry(PushRegistration registration, Instant expires) {
+    }
+
+    PushRegistrationCache(final PushRegistrationCacheSettings settings, final MeterRegistry meterRegistry) {
+        this.settings = settings;
+        hits = Counter.builder("simlar.push.registration.cache").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("simlar.push.registration.cache").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("simlar.push.registration.cache.size", this, PushRegistrationCache::size).register(meterRegistry);
+    }
+
+    @Nullable
+    synchronized PushRegistration get(final SimlarId simlarId) {
+        if (!settings.enabled()) {
+            return null;
+        }
+
+        final Entry entry = entries.get(simlarId);
+        if (entry == null || Instant.now().isAfter(entry.expires())) {
+            if (entry != null) {
+                entries.remove(simlarId);
+            }
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.registration();
+    }
+
+    /**
+     * @return the generation to pass to {@link #put(SimlarId, PushRegistration, long)} after loading a registration
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    synchronized void put(final SimlarId simlarId, final PushRegistration registration, final long loadedGeneration) {
+        if (!settings.enabled()) {
+            return;
+        }
+
+        if (loadedGeneration != generation) {
+            log.debug("not caching push registration of simlarId '{}' loaded during an invalidation", simlarId);
+            return;
+        }
+
+        entries.put(simlarId, new Entry(registration, Instant.now().plus(settings.timeToLive())));
+        if (entries.size() > settings.maxSize()) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+
+    public synchronized void invalidate(final SimlarId simlarId) {
+        if (simlarId == null) {
+            return;
+        }
+
+        generation++;
+        entries.remove(simlarId);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
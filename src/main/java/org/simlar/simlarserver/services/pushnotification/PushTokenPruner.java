@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.simlar.simlarserver.database.repositories.PushNotificationsRepository;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Deletes push ids the provider reported as unregistered, so no more push notifications are sent to them.
+ * <p>
+ * The push id is only deleted if the client did not store a new one meanwhile.
+ */
+@Slf4j
+@Component
+final class PushTokenPruner {
+    private final PushNotificationsRepository pushNotificationsRepository;
+    private final TaskScheduler taskScheduler;
+    private final PushRegistrationCache pushRegistrationCache;
+    private final Map<PushProvider, Counter> pruned = new EnumMap<>(PushProvider.class);
+
+    private PushTokenPruner(final PushNotificationsRepository pushNotificationsRepository, final TaskScheduler taskScheduler, final PushRegistrationCache pushRegistrationCache, final MeterRegistry meterRegistry) {
+        this.pushNotificationsRepository = pushNotificationsRepository;
+        this.taskScheduler = taskScheduler;
+        this.pushRegistrationCache = pushRegistrationCache;
+
+        for (final PushProvider provider : PushProvider.values()) {
+            pruned.put(provider, Counter.builder("simlar.push.tokens.pruned").tag("provider", provider.name().toLowerCase(Locale.ROOT)).register(meterRegistry));
+        }
+    }
+
+    void prune(final PushProvider provider, final SimlarId simlarId, final String pushId) {
+        taskScheduler.schedule(() -> delete(provider, simlarId, pushId), Instant.now());
+    }
+
+    private void delete(final PushProvider provider, final SimlarId simlarId, final String pushId) {
+        try {
+            if (pushNotificationsRepository.deleteBySimlarIdAndPushId(simlarId.get(), pushId) > 0) {
+                pushRegistrationCache.invalidate(simlarId);
+                pruned.get(provider).increment();
+                log.info("deleted push id of simlarId '{}' unregistered at provider '{}'", simlarId, provider);
+            }
+        } catch (final DataAccessException e) {
+            log.error("failed to delete push id of simlarId '{}' unregistered at provider '{}'", simlarId, provider, e);
+        }
+    }
+}
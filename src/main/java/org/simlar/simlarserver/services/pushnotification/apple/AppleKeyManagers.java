@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification.apple;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.KeyManager;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Caches the key managers created from the voip certificate and reloads them if the certificate file changes.
+ * <p>
+ * The file's modification time and size are checked at most once per check interval.
+ * If reloading fails, the previous key managers are kept until the file changes again.
+ */
+@Slf4j
+final class AppleKeyManagers {
+    private final String path;
+    private final Duration checkInterval;
+    private final Supplier<KeyManager[]> loader;
+    private final Counter reloads;
+    private final Counter reloadFailures;
+
+    private volatile Loaded loaded;
+    private volatile Instant nextCheck = Instant.MIN;
+    private FileVersion failedVersion;
+
+    private record FileVersion(FileTime lastModified, long size) {
+    }
+
+    private record Loaded(KeyManager[] keyManagers, FileVersion version) {
+    }
+
+    AppleKeyManagers(final String path, final Duration checkInterval, final Supplier<KeyManager[]> loader, final MeterRegistry meterRegistry) {
+        this.path = path;
+        this.checkInterval = checkInterval;
+        this.loader = loader;
+        reloads = Counter.builder("simlar.push.apple.certificate.reloads").tag("result", "success").register(meterRegistry);
+        reloadFailures = Counter.builder("simlar.push.apple.certificate.reloads").tag("result", "failure").register(meterRegistry);
+    }
+
+    KeyManager[] get() {
+        final Loaded current = loaded;
+        if (current != null && Instant.now().isBefore(nextCheck)) {
+            return current.keyManagers();
+        }
+
+        return check();
+    }
+
+    private synchronized KeyManager[] check() {
+        final Loaded current = loaded;
+        final Instant now = Instant.now();
+        if (current != null && now.isBefore(nextCheck)) {
+            return current.keyManagers();
+        }
+        nextCheck = now.plus(checkInterval);
+
+        final FileVersion version = readFileVersion();
+        if (current != null && (Objects.equals(version, current.version()) || Objects.equals(version, failedVersion))) {
+            return current.keyManagers();
+        }
+
+        try {
+            final KeyManager[] keyManagers = loader.get();
+            loaded = new Loaded(keyManagers, version);
+            failedVersion = null;
+            if (current != null) {
+                reloads.increment();
+                log.info("reloaded voip certificate '{}'", path);
+            }
+            return keyManagers;
+        } catch (final AppleKeyStoreException e) {
+            if (current == null) {
+                throw e;
+            }
+
+            failedVersion = version;
+            reloadFailures.increment();
+            log.error("failed to reload voip certificate '{}', keeping the previous one", path, e);
+            return current.keyManagers();
+        }
+    }
+
+    @SuppressFBWarnings("PATH_TRAVERSAL_IN")
+    @SuppressWarnings("ReturnOfNull")
+    private FileVersion readFileVersion() {
+        if (path == null) {
+            return null;
+        }
+
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(Path.of(path), BasicFileAttributes.class);
+            return new FileVersion(attributes.lastModifiedTime(), attributes.size());
+        } catch (final IOException e) {
+            log.warn("unable to read attributes of voip certificate '{}': {}", path, e.getMessage());
+            return null;
+        }
+    }
+}
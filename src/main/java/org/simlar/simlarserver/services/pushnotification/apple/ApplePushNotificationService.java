@@ -22,7 +22,7 @@
 package org.simlar.simlarserver.services.pushnotification.apple;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import lombok.AllArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -30,7 +30,7 @@ import org.simlar.simlarserver.data.ApplePushServer;
 import org.simlar.simlarserver.services.pushnotification.apple.json.ApplePushNotificationRequest;
 import org.simlar.simlarserver.services.pushnotification.apple.json.ApplePushNotificationRequestCaller;
 import org.simlar.simlarserver.services.pushnotification.apple.json.ApplePushNotificationRequestDetails;
-import org.simlar.simlarserver.utils.certificatepinning.CertificatePinningUtil;
+import org.simlar.simlarserver.utils.certificatepinning.HttpClientRegistry;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -54,16 +54,26 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
-@AllArgsConstructor
 @Slf4j
 @Component
 public final class ApplePushNotificationService {
+    private static final Duration CERTIFICATE_CHECK_INTERVAL = Duration.ofSeconds(10);
+
     private final ApplePushNotificationSettings pushNotificationSettings;
+    private final HttpClientRegistry httpClientRegistry;
+    private final AppleKeyManagers keyManagers;
+
+    ApplePushNotificationService(final ApplePushNotificationSettings pushNotificationSettings, final HttpClientRegistry httpClientRegistry, final MeterRegistry meterRegistry) {
+        this.pushNotificationSettings = pushNotificationSettings;
+        this.httpClientRegistry = httpClientRegistry;
+        keyManagers = new AppleKeyManagers(pushNotificationSettings.getVoipCertificatePath(), CERTIFICATE_CHECK_INTERVAL, this::createKeyManagers, meterRegistry);
+    }
 
     @Nullable
     static String getCertificateSubject(final KeyStore keyStore, final String alias) {
@@ -125,6 +135,13 @@ public final class ApplePushNotificationService {
         }
     }
 
+    /**
+     * APNs answers with status 410 or reason Unregistered if the device token is no longer valid for the topic.
+     */
+    public static boolean isUnregistered(final HttpStatusCodeException e) {
+        return e.getStatusCode().value() == HttpStatus.GONE.value() || e.getResponseBodyAsString().contains("\"Unregistered\"");
+    }
+
     public String requestVoipPushNotification(final ApplePushServer server, final ApplePushNotificationRequestCaller caller, final String deviceToken) {
         return requestVoipPushNotification(server.getUrl(), caller, deviceToken, Instant.now().plusSeconds(60));
     }
@@ -147,7 +164,7 @@ public final class ApplePushNotificationService {
 
         try {
             final ResponseEntity<String> response =
-                    CertificatePinningUtil.createRestTemplate(certificatePinnings, pushNotificationSettings.getSslProtocol(), createKeyManagers())
+                    httpClientRegistry.getRestTemplate(certificatePinnings, pushNotificationSettings.getSslProtocol(), keyManagers.get())
                     .postForEntity(url + deviceToken, entity, String.class);
 
             if (response.hasBody()) {
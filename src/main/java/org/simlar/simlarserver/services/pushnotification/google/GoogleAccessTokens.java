@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification.google;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the access token of the google credentials, refreshed in the background before it expires.
+ * <p>
+ * Requests only refresh the token themselves if the background refresh did not keep up and the token actually expired.
+ */
+@Slf4j
+final class GoogleAccessTokens {
+    private final GoogleCredentials googleCredentials;
+    private final Timer refreshes;
+    private final Timer refreshFailures;
+
+    private volatile AccessToken accessToken;
+
+    GoogleAccessTokens(final GoogleCredentials googleCredentials, final MeterRegistry meterRegistry) {
+        this.googleCredentials = googleCredentials;
+        refreshes = Timer.builder("simlar.push.google.token.refreshes").tag("result", "success").register(meterRegistry);
+        refreshFailures = Timer.builder("simlar.push.google.token.refreshes").tag("result", "failure").register(meterRegistry);
+    }
+
+    @Nullable
+    String get() {
+        final AccessToken current = accessToken;
+        if (current != null && !expiresWithin(current, Duration.ZERO)) {
+            return current.getTokenValue();
+        }
+
+        final AccessToken refreshed = refreshIfExpiring(Duration.ZERO);
+        return refreshed == null ? null : refreshed.getTokenValue();
+    }
+
+    /**
+     * Refreshes the token if it expires within the given margin.
+     * Concurrent callers wait for a single refresh.
+     */
+    @Nullable
+    synchronized AccessToken refreshIfExpiring(final Duration margin) {
+        final AccessToken current = accessToken;
+        if (current != null && !expiresWithin(current, margin)) {
+            return current;
+        }
+
+        final long begin = System.nanoTime();
+        try {
+            googleCredentials.refresh();
+            final AccessToken refreshed = googleCredentials.getAccessToken();
+            refreshes.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+            if (refreshed == null) {
+                log.error("no google access token after refresh");
+                return current;
+            }
+
+            log.info("refreshed google access token expiring at '{}'", refreshed.getExpirationTime());
+            accessToken = refreshed;
+            return refreshed;
+        } catch (final IOException e) {
+            refreshFailures.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+            log.error("failed to refresh google credentials", e);
+            return current == null || expiresWithin(current, Duration.ZERO) ? null : current;
+        }
+    }
+
+    private static boolean expiresWithin(final AccessToken token, final Duration margin) {
+        final Date expirationTime = token.getExpirationTime();
+        return expirationTime != null && expirationTime.getTime() - System.currentTimeMillis() <= margin.toMillis();
+    }
+}
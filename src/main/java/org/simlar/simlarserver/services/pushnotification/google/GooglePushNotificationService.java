@@ -22,10 +22,11 @@
 package org.simlar.simlarserver.services.pushnotification.google;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -35,36 +36,61 @@ import org.simlar.simlarserver.services.pushnotification.google.json.GooglePushN
 import org.simlar.simlarserver.services.pushnotification.google.json.GooglePushNotificationRequest;
 import org.simlar.simlarserver.services.pushnotification.google.json.GooglePushNotificationRequestDetails;
 import org.simlar.simlarserver.services.pushnotification.google.json.GooglePushNotificationResponse;
-import org.simlar.simlarserver.utils.certificatepinning.CertificatePinningUtil;
+import org.simlar.simlarserver.utils.certificatepinning.HttpClientRegistry;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collection;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collections;
+import java.util.List;
 
 @Slf4j
 @Component
 public final class GooglePushNotificationService {
+    private static final Duration ACCESS_TOKEN_REFRESH_MARGIN = Duration.ofMinutes(10);
+    private static final Duration ACCESS_TOKEN_CHECK_INTERVAL = Duration.ofMinutes(1);
+
     private final GooglePushNotificationSettings pushNotificationSettings;
+    private final HttpClientRegistry httpClientRegistry;
+    private final TaskScheduler taskScheduler;
 
-    private final GoogleCredentials googleCredentials;
+    private final GoogleAccessTokens accessTokens;
 
-    GooglePushNotificationService(final GooglePushNotificationSettings pushNotificationSettings) {
+    GooglePushNotificationService(final GooglePushNotificationSettings pushNotificationSettings, final HttpClientRegistry httpClientRegistry, final MeterRegistry meterRegistry, final TaskScheduler taskScheduler) {
         this.pushNotificationSettings = pushNotificationSettings;
+        this.httpClientRegistry = httpClientRegistry;
+        this.taskScheduler = taskScheduler;
 
-        //noinspection AssignmentToNull
-        googleCredentials = pushNotificationSettings.isConfigured()
+        final GoogleCredentials googleCredentials = pushNotificationSettings.isConfigured()
                 ? createGoogleCredentials(pushNotificationSettings.getCredentialsJsonPath())
                 : null;
+        //noinspection AssignmentToNull
+        accessTokens = googleCredentials == null ? null : new GoogleAccessTokens(googleCredentials, meterRegistry);
+    }
+
+    @SuppressWarnings({"unused", "RedundantSuppression"})
+    @EventListener
+    public void handleApplicationReadyEvent(final ApplicationReadyEvent event) {
+        if (accessTokens == null) {
+            return;
+        }
+
+        taskScheduler.scheduleWithFixedDelay(() -> accessTokens.refreshIfExpiring(ACCESS_TOKEN_REFRESH_MARGIN), Instant.now(), ACCESS_TOKEN_CHECK_INTERVAL);
     }
 
     private static GoogleCredentials createGoogleCredentials(final String credentialsJsonPath) {
@@ -80,7 +106,7 @@ public final class GooglePushNotificationService {
 
     @Nullable
     String getAccessTokenValue() {
-        if (googleCredentials == null) {
+        if (accessTokens == null) {
             if (pushNotificationSettings.isConfigured()) {
                 log.warn("no google credentials configured");
             } else {
@@ -89,15 +115,7 @@ public final class GooglePushNotificationService {
             return null;
         }
 
-        try {
-            googleCredentials.refreshIfExpired();
-        } catch (final IOException e) {
-            log.error("failed to refresh google credentials", e);
-            return null;
-        }
-
-        final AccessToken accessToken = googleCredentials.getAccessToken();
-        return accessToken == null ? null : accessToken.getTokenValue();
+        return accessTokens.get();
     }
 
     @Nullable
@@ -108,9 +126,14 @@ public final class GooglePushNotificationService {
             return null;
         }
 
+        final List<String> certificatePinnings = pushNotificationSettings.getFirebaseCertificatePinning();
+        if (certificatePinnings == null || certificatePinnings.isEmpty()) {
+            log.warn("certificate pinning disabled");
+        }
+
         return requestPushNotification(
+                httpClientRegistry.getRestTemplate(certificatePinnings),
                 GooglePushServer.URL,
-                pushNotificationSettings.getFirebaseCertificatePinning(),
                 pushNotificationSettings.getProjectId(),
                 bearer,
                 token);
@@ -118,11 +141,7 @@ public final class GooglePushNotificationService {
 
     @Nullable
     @SuppressFBWarnings({"MOM_MISLEADING_OVERLOAD_MODEL", "EXS_EXCEPTION_SOFTENING_NO_CONSTRAINTS"})
-    static String requestPushNotification(final String url, final Collection<String> certificatePinnings, final String projectId, final String bearer, final String token) {
-        if (certificatePinnings == null || certificatePinnings.isEmpty()) {
-            log.warn("certificate pinning disabled");
-        }
-
+    static String requestPushNotification(final RestTemplate restTemplate, final String url, final String projectId, final String bearer, final String token) {
         final HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         headers.add("Authorization", "Bearer " + bearer);
@@ -133,7 +152,7 @@ public final class GooglePushNotificationService {
                             new GooglePushNotificationAndroidDetails("60s", "call", "high"),
                             token));
 
-            final ResponseEntity<String> response = CertificatePinningUtil.createRestTemplate(certificatePinnings)
+            final ResponseEntity<String> response = restTemplate
                     .postForEntity(url + "/v1/projects/" + projectId + "/messages:send",
                             new HttpEntity<>(request, headers),
                             String.class);
@@ -156,6 +175,31 @@ public final class GooglePushNotificationService {
         }
     }
 
+    /**
+     * FCM answers with status NOT_FOUND or error code UNREGISTERED if the app instance was unregistered.
+     */
+    public static boolean isUnregistered(final HttpStatusCodeException e) {
+        if (e.getStatusCode().value() == HttpStatus.NOT_FOUND.value()) {
+            return true;
+        }
+
+        try {
+            final JsonNode error = new ObjectMapper().readTree(e.getResponseBodyAsString()).path("error");
+            if ("NOT_FOUND".equals(error.path("status").asText())) {
+                return true;
+            }
+
+            for (final JsonNode detail : error.path("details")) {
+                if ("UNREGISTERED".equals(detail.path("errorCode").asText())) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (final JsonProcessingException ignored) {
+            return false;
+        }
+    }
+
     @Nullable
     private static String parseResponse(final String response) {
         try {
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsoutboxservice;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simlar.simlarserver.data.SmsOutboxStatus;
+import org.simlar.simlarserver.data.TwilioRequestType;
+import org.simlar.simlarserver.database.models.SmsOutboxEntry;
+import org.simlar.simlarserver.database.repositories.SmsOutboxRepository;
+import org.simlar.simlarserver.services.smsservice.SmsService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends sms and calls asynchronously via the transactional outbox table simlar_sms_outbox.
+ * <p>
+ * An entry is stored in the same transaction as the caller's changes and dispatched to a bounded worker pool after commit.
+ * Workers claim an entry with a lease, so entries of crashed or overloaded workers are picked up again by the poller.
+ * Failed sends are retried with exponential backoff until {@link SmsOutboxSettings#maxAttempts()} is reached.
+ * Delivery is at least once: a send outliving its lease may be repeated.
+ * <p>
+ * An entry is skipped if an entry with the same idempotency key is still pending or in progress.
+ * If the outbox is disabled or the entry cannot be stored, e.g. because an already sent or failed entry has the same key,
+ * {@link #enqueue} returns false and the caller has to send synchronously.
+ */
+@Slf4j
+@Component
+public final class SmsOutboxService implements DisposableBean {
+    /**
+     * The provider is chosen by the {@link SmsService} when sending, which also limits concurrent requests per provider.
+     */
+    static final String PROVIDER = "routed";
+    private static final Set<SmsOutboxStatus> DUE_STATUSES = EnumSet.of(SmsOutboxStatus.PENDING, SmsOutboxStatus.IN_PROGRESS);
+
+    private final SmsOutboxSettings settings;
+    private final SmsOutboxRepository smsOutboxRepository;
+    private final SmsService smsService;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+    private final ThreadPoolExecutor executor;
+    private final Set<Long> dispatched = ConcurrentHashMap.newKeySet();
+
+    private SmsOutboxService(final SmsOutboxSettings settings, final SmsOutboxRepository smsOutboxRepository, final SmsService smsService, final PlatformTransactionManager transactionManager, final TaskScheduler taskScheduler) {
+        this.settings = settings;
+        this.smsOutboxRepository = smsOutboxRepository;
+        this.smsService = smsService;
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        this.taskScheduler = taskScheduler;
+        executor = new ThreadPoolExecutor(settings.workers(), settings.workers(), 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(settings.queueCapacity()), new CustomizableThreadFactory("sms-outbox-"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @SuppressWarnings({"unused", "RedundantSuppression"})
+    @EventListener
+    public void handleApplicationReadyEvent(final ApplicationReadyEvent event) {
+        if (!settings.enabled()) {
+            log.info("sms outbox disabled");
+            return;
+        }
+
+        log.info("sms outbox enabled with '{}' workers", settings.workers());
+        taskScheduler.scheduleWithFixedDelay(this::poll, settings.pollInterval());
+    }
+
+    /**
+     * Stores an sms or call in the outbox together with the caller's changes.
+     *
+     * @param saveChanges persists the caller's changes, runs within the outbox transaction
+     * @return false if the outbox is disabled or storing failed, the changes are not saved then
+     */
+    @SuppressWarnings("BooleanMethodNameMustStartWithQuestion")
+    public boolean enqueue(final TwilioRequestType type, final String telephoneNumber, final String message, final String idempotencyKey, final Runnable saveChanges) {
+        if (!settings.enabled()) {
+            return false;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                saveChanges.run();
+                if (smsOutboxRepository.existsByIdempotencyKeyAndStatusIn(idempotencyKey, DUE_STATUSES)) {
+                    log.info("skip already queued '{}' with key '{}'", type, idempotencyKey);
+                    return;
+                }
+
+                final long id = smsOutboxRepository.save(new SmsOutboxEntry(idempotencyKey, PROVIDER, type, telephoneNumber, message, Instant.now())).getId();
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        dispatch(id);
+                    }
+                });
+            });
+            return true;
+        } catch (final DataIntegrityViolationException e) {
+            log.warn("'{}' with key '{}' already stored", type, idempotencyKey, e);
+            return saveQueuedConcurrently(idempotencyKey, saveChanges);
+        } catch (final DataAccessException e) {
+            log.error("failed to queue '{}' to '{}', falling back to sending synchronously", type, telephoneNumber, e);
+            return false;
+        }
+    }
+
+    private boolean saveQueuedConcurrently(final String idempotencyKey, final Runnable saveChanges) {
+        try {
+            if (!smsOutboxRepository.existsByIdempotencyKeyAndStatusIn(idempotencyKey, DUE_STATUSES)) {
+                log.info("entry with key '{}' already completed, falling back to sending synchronously", idempotencyKey);
+                return false;
+            }
+
+            transactionTemplate.executeWithoutResult(status -> saveChanges.run());
+            return true;
+        } catch (final DataAccessException e) {
+            log.error("failed to save changes for key '{}', falling back to sending synchronously", idempotencyKey, e);
+            return false;
+        }
+    }
+
+    private void dispatch(final long id) {
+        if (!dispatched.add(id)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> process(id));
+        } catch (final RejectedExecutionException ignored) {
+            dispatched.remove(id);
+            log.info("sms outbox workers busy, entry '{}' waits for the next poll", id);
+        }
+    }
+
+    void poll() {
+        try {
+            smsOutboxRepository.findDueIds(DUE_STATUSES, Instant.now(), PageRequest.ofSize(settings.batchSize())).forEach(this::dispatch);
+        } catch (final DataAccessException e) {
+            log.error("polling sms outbox failed", e);
+        }
+    }
+
+    private void process(final long id) {
+        try {
+            final Instant now = Instant.now();
+            final Integer claimed = transactionTemplate.execute(status ->
+                    smsOutboxRepository.claim(id, SmsOutboxStatus.IN_PROGRESS, now.plus(settings.lease()), DUE_STATUSES, now));
+            if (claimed == null || claimed == 0) {
+                return;
+            }
+
+            smsOutboxRepository.findById(id).ifPresent(entry -> complete(entry, send(entry)));
+        } catch (final DataAccessException e) {
+            log.error("processing sms outbox entry '{}' failed", id, e);
+        } finally {
+            dispatched.remove(id);
+        }
+    }
+
+    private boolean send(final SmsOutboxEntry entry) {
+        try {
+            return switch (entry.getType()) {
+                case SMS -> smsService.sendSms(entry.getTelephoneNumber(), entry.getMessage());
+                case CALL -> smsService.call(entry.getTelephoneNumber(), entry.getMessage());
+            };
+        } catch (final RuntimeException e) {
+            log.error("sending '{}' to '{}' failed", entry.getType(), entry.getTelephoneNumber(), e);
+            return false;
+        }
+    }
+
+    private void complete(final SmsOutboxEntry entry, final boolean success) {
+        if (success) {
+            entry.setStatus(SmsOutboxStatus.SENT);
+        } else if (entry.getAttempts() >= settings.maxAttempts()) {
+            log.error("giving up '{}' to '{}' after '{}' attempts", entry.getType(), entry.getTelephoneNumber(), entry.getAttempts());
+            entry.setStatus(SmsOutboxStatus.FAILED);
+        } else {
+            entry.setStatus(SmsOutboxStatus.PENDING);
+            entry.setNextAttempt(Instant.now().plus(settings.retryDelay(entry.getAttempts())));
+            log.warn("retrying '{}' to '{}' at '{}'", entry.getType(), entry.getTelephoneNumber(), entry.getNextAttempt());
+        }
+
+        smsOutboxRepository.save(entry);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("sms outbox workers did not finish, remaining entries are sent after restart");
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsoutboxservice;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "sms.outbox")
+record SmsOutboxSettings(
+        @DefaultValue("false")
+        boolean enabled,
+
+        @DefaultValue("4")
+        int workers,
+
+        @DefaultValue("100")
+        int queueCapacity,
+
+        @DefaultValue("5")
+        int maxAttempts,
+
+        @DefaultValue("10s")
+        Duration retryDelay,
+
+        @DefaultValue("5m")
+        Duration lease,
+
+        @DefaultValue("5s")
+        Duration pollInterval,
+
+        @DefaultValue("50")
+        int batchSize) {
+
+    Duration retryDelay(final int attempts) {
+        return retryDelay.multipliedBy(1L << Math.min(Math.max(attempts - 1, 0), 10));
+    }
+}
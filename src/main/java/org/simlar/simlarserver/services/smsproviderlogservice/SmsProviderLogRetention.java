@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsproviderlogservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.simlar.simlarserver.database.models.SmsProviderLog;
+import org.simlar.simlarserver.database.repositories.SchedulerLockRepository;
+import org.simlar.simlarserver.database.repositories.SmsProviderLogRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deletes entries of simlar_sms_provider_log older than the max age in small batches, so no delete holds locks for long.
+ * <p>
+ * If an export directory is configured, the entries are appended to a gzip compressed ndjson file per run before they are deleted.
+ * The file is only created if there are expired entries.
+ * If exporting fails, nothing more is deleted.
+ * A lease in simlar_scheduler_lock ensures only one node of a cluster purges and exports at a time.
+ * If a run outlasts its lease, it stops and the next run continues.
+ * <p>
+ * The first run on an existing installation may take hours, so it runs on its own thread instead of the shared task scheduler.
+ */
+@Slf4j
+@Component
+final class SmsProviderLogRetention implements DisposableBean {
+    private static final DateTimeFormatter FILE_NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final String LOCK_NAME = "sms_provider_log_retention";
+    private static final String NODE = ManagementFactory.getRuntimeMXBean().getName() + '/' + UUID.randomUUID();
+
+    private final SmsProviderLogRetentionSettings settings;
+    private final SmsProviderLogRepository smsProviderLogRepository;
+    private final SchedulerLockRepository schedulerLockRepository;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("sms-provider-log-retention-"));
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final Timer runs;
+    private final Counter exported;
+    private final Counter deleted;
+    private final Counter skipped;
+
+    private SmsProviderLogRetention(final SmsProviderLogRetentionSettings settings, final SmsProviderLogRepository smsProviderLogRepository, final SchedulerLockRepository schedulerLockRepository, final MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.smsProviderLogRepository = smsProviderLogRepository;
+        this.schedulerLockRepository = schedulerLockRepository;
+        runs = Timer.builder("simlar.sms.provider.log.retention").register(meterRegistry);
+        exported = Counter.builder("simlar.sms.provider.log.retention.rows").tag("action", "exported").register(meterRegistry);
+        deleted = Counter.builder("simlar.sms.provider.log.retention.rows").tag("action", "deleted").register(meterRegistry);
+        skipped = Counter.builder("simlar.sms.provider.log.retention.skipped").register(meterRegistry);
+    }
+
+    @SuppressWarnings({"unused", "RedundantSuppression"})
+    @EventListener
+    public void handleApplicationReadyEvent(final ApplicationReadyEvent event) {
+        if (!settings.enabled()) {
+            log.info("sms provider log retention disabled");
+            return;
+        }
+
+        log.info("sms provider log retention enabled with max age '{}'", settings.maxAge());
+        executor.scheduleWithFixedDelay(this::run, 0, settings.interval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        try {
+            purge(Instant.now());
+        } catch (final RuntimeException e) {
+            // an exception would cancel the following runs
+            log.error("sms provider log retention failed", e);
+        }
+    }
+
+    /**
+     * @return the number of deleted entries, 0 if another node holds the lock
+     */
+    @SuppressFBWarnings("PATH_TRAVERSAL_IN")
+    int purge(final Instant now) {
+        final Instant lockedUntil = now.plus(settings.lockDuration());
+        if (!lock(now, lockedUntil)) {
+            log.info("skip purging sms provider log, because another node holds the lock");
+            skipped.increment();
+            return 0;
+        }
+
+        try {
+            return runs.record(() -> {
+                final Instant before = now.minus(settings.maxAge());
+                final Path file = StringUtils.isEmpty(settings.exportDirectory())
+                        ? null
+                        : Path.of(settings.exportDirectory(), "simlar_sms_provider_log-" + FILE_NAME_FORMATTER.format(now) + ".ndjson.gz");
+                return purge(before, lockedUntil, file);
+            });
+        } finally {
+            unlock();
+        }
+    }
+
+    private boolean lock(final Instant now, final Instant lockedUntil) {
+        try {
+            schedulerLockRepository.create(LOCK_NAME, now, NODE);
+            return schedulerLockRepository.lock(LOCK_NAME, lockedUntil, NODE, now) == 1;
+        } catch (final DataAccessException e) {
+            log.error("failed to lock '{}'", LOCK_NAME, e);
+            return false;
+        }
+    }
+
+    private void unlock() {
+        try {
+            schedulerLockRepository.unlock(LOCK_NAME, Instant.now(), NODE);
+        } catch (final DataAccessException e) {
+            log.error("failed to unlock '{}', it expires with its lease", LOCK_NAME, e);
+        }
+    }
+
+    private int purge(final Instant before, final Instant lockedUntil, final Path file) {
+        int count = 0;
+        OutputStream export = null;
+        try {
+            while (Instant.now().isBefore(lockedUntil)) {
+                final List<SmsProviderLog> expired = smsProviderLogRepository.findByTimestampBeforeOrderByIdAsc(before, PageRequest.of(0, settings.batchSize()));
+                if (expired.isEmpty()) {
+                    break;
+                }
+
+                if (file != null) {
+                    if (export == null) {
+                        export = new GZIPOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), true);
+                    }
+                    for (final SmsProviderLog smsProviderLog : expired) {
+                        export.write(objectMapper.writeValueAsBytes(smsProviderLog));
+                        export.write('\n');
+                    }
+                    export.flush();
+                    exported.increment(expired.size());
+                }
+
+                final int deletedRows = smsProviderLogRepository.deleteByIdIn(expired.stream().map(SmsProviderLog::getId).toList());
+                deleted.increment(deletedRows);
+                count += deletedRows;
+
+                if (expired.size() < settings.batchSize() || !pause()) {
+                    break;
+                }
+            }
+        } catch (final IOException e) {
+            log.error("failed to export sms provider log to '{}' after deleting '{}' entries", file, count, e);
+        } catch (final DataAccessException e) {
+            log.error("failed to purge sms provider log after deleting '{}' entries", count, e);
+        } finally {
+            close(export, file);
+        }
+
+        if (count > 0) {
+            log.info("deleted '{}' sms provider log entries older than '{}'", count, before);
+        }
+        return count;
+    }
+
+    private static void close(final OutputStream export, final Path file) {
+        if (export == null) {
+            return;
+        }
+
+        try {
+            export.close();
+        } catch (final IOException e) {
+            log.error("failed to close sms provider log export '{}'", file, e);
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(settings.batchPause());
+            return true;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("interrupted while purging sms provider log");
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
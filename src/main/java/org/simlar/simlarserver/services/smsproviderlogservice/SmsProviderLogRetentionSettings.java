@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsproviderlogservice;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "sms.provider.log.retention")
+record SmsProviderLogRetentionSettings(
+        @DefaultValue("false")
+        boolean enabled,
+
+        @DefaultValue("180d")
+        Duration maxAge,
+
+        @DefaultValue("1000")
+        int batchSize,
+
+        @DefaultValue("100ms")
+        Duration batchPause,
+
+        @DefaultValue("1h")
+        Duration interval,
+
+        @DefaultValue("")
+        String exportDirectory,
+
+        @DefaultValue("30m")
+        Duration lockDuration) {
+}
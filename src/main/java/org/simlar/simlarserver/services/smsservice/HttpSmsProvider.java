@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsservice;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.simlar.simlarserver.data.TwilioRequestType;
+import org.simlar.simlarserver.database.models.SmsProviderLog;
+import org.simlar.simlarserver.database.repositories.SmsProviderLogRepository;
+import org.simlar.simlarserver.json.smsprovider.SmsProviderRequest;
+import org.simlar.simlarserver.json.smsprovider.SmsProviderResponse;
+import org.simlar.simlarserver.utils.certificatepinning.HttpClientRegistry;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Locale;
+
+/**
+ * Generic provider contract, so providers other than twilio only need a small adapter.
+ * <p>
+ * The provider receives a POST request with a json body {"type": "sms" or "call", "to": telephone number, "text": message}
+ * and, if configured, the header "Authorization: Bearer token".
+ * A 2xx response with a json body {"id": message id} means the provider accepted the request.
+ * Other 4xx responses than 408 and 429 mean the provider rejected the request, e.g. for an invalid telephone number.
+ * The id is stored as session id in simlar_sms_provider_log, status callbacks are not supported.
+ */
+@Slf4j
+final class HttpSmsProvider implements SmsProvider {
+    private final String name;
+    private final String url;
+    private final RestTemplate restTemplate;
+    private final SmsProviderLogRepository smsProviderLogRepository;
+
+    HttpSmsProvider(final SmsRoutingSettings.HttpProvider settings, final HttpClientRegistry httpClientRegistry, final SmsProviderLogRepository smsProviderLogRepository) {
+        name = settings.name();
+        url = settings.url();
+        final RestTemplateBuilder builder = new RestTemplateBuilder().requestFactory(() -> httpClientRegistry.getRequestFactory(null));
+        restTemplate = StringUtils.isEmpty(settings.token())
+                ? builder.build()
+                : builder.defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + settings.token()).build();
+        this.smsProviderLogRepository = smsProviderLogRepository;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    private SmsProviderResult postRequest(final TwilioRequestType type, final String telephoneNumber, final String text) {
+        try {
+            final SmsProviderResponse response = restTemplate.postForObject(url, new SmsProviderRequest(type.name().toLowerCase(Locale.ROOT), telephoneNumber, text), SmsProviderResponse.class);
+            if (response == null || StringUtils.isEmpty(response.getId())) {
+                log.error("while sending '{}' request to '{}' provider '{}' responded without id '{}'", type, telephoneNumber, name, response);
+                smsProviderLogRepository.save(new SmsProviderLog(type, telephoneNumber, null, "SimlarServerException", name + ": response without id", text));
+                return SmsProviderResult.FAILED;
+            }
+
+            log.info("while sending '{}' request to '{}' provider '{}' responded '{}'", type, telephoneNumber, name, response);
+            smsProviderLogRepository.save(new SmsProviderLog(type, telephoneNumber, response.getId(), StringUtils.defaultIfEmpty(response.getStatus(), "accepted"), text));
+            return SmsProviderResult.SENT;
+        } catch (final HttpClientErrorException e) {
+            log.info("while sending '{}' request to '{}' provider '{}' responded '{}' '{}'", type, telephoneNumber, name, e.getMessage(), e.getResponseBodyAsString());
+            smsProviderLogRepository.save(new SmsProviderLog(type, telephoneNumber, null, String.valueOf(e.getStatusCode().value()), name + ": " + e.getResponseBodyAsString(), text));
+            return isRejected(e) ? SmsProviderResult.REJECTED : SmsProviderResult.FAILED;
+        } catch (final RestClientException e) {
+            final String cause = ExceptionUtils.getRootCauseMessage(e);
+            log.error("while sending '{}' request to '{}' provider '{}' failed '{}'", type, telephoneNumber, name, cause, e);
+            smsProviderLogRepository.save(new SmsProviderLog(type, telephoneNumber, null, "SimlarServerException", name + ": " + cause, text));
+            return SmsProviderResult.FAILED;
+        }
+    }
+
+    private static boolean isRejected(final HttpClientErrorException e) {
+        return e.getStatusCode().value() != HttpStatus.REQUEST_TIMEOUT.value() && e.getStatusCode().value() != HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    @Override
+    public SmsProviderResult sendSms(final String telephoneNumber, final String text) {
+        return postRequest(TwilioRequestType.SMS, telephoneNumber, text);
+    }
+
+    @Override
+    public SmsProviderResult call(final String telephoneNumber, final String text) {
+        return postRequest(TwilioRequestType.CALL, telephoneNumber, text);
+    }
+}
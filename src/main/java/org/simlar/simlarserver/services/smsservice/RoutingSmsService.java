@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Strings;
+import org.simlar.simlarserver.data.TwilioRequestType;
+import org.simlar.simlarserver.database.repositories.SmsProviderLogRepository;
+import org.simlar.simlarserver.utils.certificatepinning.HttpClientRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Sends sms and calls via one of several {@link SmsProvider}s, e.g. twilio and providers following the {@link HttpSmsProvider} contract.
+ * <p>
+ * Each telephone number uses the providers of the route with the longest matching prefix, or the default providers.
+ * Success rate and 95th percentile latency of the most recent requests are tracked per route and provider.
+ * Providers with enough samples and a success rate below the minimum are tried last.
+ * The remaining providers with enough samples swap places by their latency, the others keep their configured place.
+ * Samples expire, so a degraded provider gets requests again after a while.
+ * If a provider fails, the next one is tried.
+ * Requests a provider rejects, e.g. for an invalid telephone number, are neither tried with other providers nor counted in the success rate.
+ * Concurrent requests per provider may be limited, a provider busy for longer than the acquire timeout is skipped.
+ * <p>
+ * If routing is disabled, only the first provider of the route is used, without failover.
+ */
+@Slf4j
+@Component
+public final class RoutingSmsService implements SmsService {
+    private final SmsRoutingSettings settings;
+    private final Map<String, RoutedProvider> providers = new LinkedHashMap<>();
+    private final ConcurrentMap<String, SmsProviderStats> stats = new ConcurrentHashMap<>();
+    private final Counter failovers;
+
+    private record RoutedProvider(SmsProvider provider, Semaphore limit, Timer successes, Timer rejections, Timer failures) {
+    }
+
+    @Autowired // fix IntelliJ inspection warning unused
+    private RoutingSmsService(final SmsRoutingSettings settings, final List<SmsProvider> providers, final HttpClientRegistry httpClientRegistry, final SmsProviderLogRepository smsProviderLogRepository, final MeterRegistry meterRegistry) {
+        this(settings, Stream.concat(providers.stream(), settings.httpProviders().stream()
+                .map(httpProvider -> new HttpSmsProvider(httpProvider, httpClientRegistry, smsProviderLogRepository))).toList(), meterRegistry);
+    }
+
+    RoutingSmsService(final SmsRoutingSettings settings, final List<? extends SmsProvider> providers, final MeterRegistry meterRegistry) {
+        this.settings = settings;
+        for (final SmsProvider provider : providers) {
+            this.providers.put(provider.getName(), new RoutedProvider(provider,
+                    settings.maxConcurrentRequestsPerProvider() > 0 ? new Semaphore(settings.maxConcurrentRequestsPerProvider()) : null,
+                    Timer.builder("simlar.sms.requests").tag("provider", provider.getName()).tag("result", "success").register(meterRegistry),
+                    Timer.builder("simlar.sms.requests").tag("provider", provider.getName()).tag("result", "rejected").register(meterRegistry),
+                    Timer.builder("simlar.sms.requests").tag("provider", provider.getName()).tag("result", "failure").register(meterRegistry)));
+        }
+        failovers = Counter.builder("simlar.sms.failovers").register(meterRegistry);
+
+        Stream.concat(settings.providers().stream(), settings.routes().stream().flatMap(route -> route.providers().stream()))
+                .filter(name -> !this.providers.containsKey(name))
+                .distinct()
+                .forEach(name -> log.error("unknown sms provider '{}' configured, available are '{}'", name, this.providers.keySet()));
+    }
+
+    private SmsRoutingSettings.Route findRoute(final String telephoneNumber) {
+        return settings.routes().stream()
+                .filter(route -> Strings.CS.startsWith(telephoneNumber, route.prefix()))
+                .max(Comparator.comparingInt(route -> route.prefix().length()))
+                .orElseGet(() -> new SmsRoutingSettings.Route("", settings.providers()));
+    }
+
+    private SmsProviderStats getStats(final String prefix, final String provider) {
+        return stats.computeIfAbsent(prefix + ' ' + provider, key -> new SmsProviderStats(settings.window(), settings.sampleTimeToLive()));
+    }
+
+    List<String> findProviders(final String telephoneNumber) {
+        final SmsRoutingSettings.Route route = findRoute(telephoneNumber);
+        final List<String> names = route.providers().stream().filter(providers::containsKey).distinct().toList();
+        if (!settings.enabled()) {
+            return names.isEmpty() ? names : names.subList(0, 1);
+        }
+
+        final Map<String, SmsProviderStats.Snapshot> snapshots = new LinkedHashMap<>();
+        for (final String name : names) {
+            snapshots.put(name, getStats(route.prefix(), name).snapshot());
+        }
+
+        final Iterator<String> fastestFirst = names.stream()
+                .filter(name -> hasEnoughSamples(snapshots.get(name)) && !isDegraded(snapshots.get(name)))
+                .sorted(Comparator.comparing(name -> snapshots.get(name).percentile95()))
+                .iterator();
+
+        final List<String> sorted = new ArrayList<>(names.size());
+        for (final String name : names) {
+            if (!isDegraded(snapshots.get(name))) {
+                sorted.add(hasEnoughSamples(snapshots.get(name)) ? fastestFirst.next() : name);
+            }
+        }
+        names.stream().filter(name -> isDegraded(snapshots.get(name))).forEach(sorted::add);
+        return sorted;
+    }
+
+    private boolean hasEnoughSamples(final SmsProviderStats.Snapshot snapshot) {
+        return snapshot.samples() >= settings.minSamples();
+    }
+
+    private boolean isDegraded(final SmsProviderStats.Snapshot snapshot) {
+        return hasEnoughSamples(snapshot) && snapshot.successRate() < settings.minSuccessRate();
+    }
+
+    @SuppressWarnings("BooleanMethodNameMustStartWithQuestion")
+    private boolean send(final TwilioRequestType type, final String telephoneNumber, final String text) {
+        final String prefix = findRoute(telephoneNumber).prefix();
+        final List<String> names = findProviders(telephoneNumber);
+        if (names.isEmpty()) {
+            log.error("no sms provider available for '{}' request to '{}'", type, telephoneNumber);
+            return false;
+        }
+
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                log.warn("failing over '{}' request to '{}' from provider '{}' to '{}'", type, telephoneNumber, names.get(i - 1), names.get(i));
+                failovers.increment();
+            }
+
+            //noinspection SwitchStatement
+            switch (send(prefix, providers.get(names.get(i)), type, telephoneNumber, text)) { // NOPMD.SwitchStmtsShouldHaveDefault
+                case SENT -> {
+                    return true;
+                }
+                case REJECTED -> {
+                    return false;
+                }
+                case FAILED -> {
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private SmsProviderResult send(final String prefix, final RoutedProvider routedProvider, final TwilioRequestType type, final String telephoneNumber, final String text) {
+        final Semaphore limit = routedProvider.limit();
+        if (limit == null) {
+            return sendUnlimited(prefix, routedProvider, type, telephoneNumber, text);
+        }
+
+        try {
+            if (!limit.tryAcquire(settings.acquireTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                log.warn("provider '{}' busy, skipping '{}' request to '{}'", routedProvider.provider().getName(), type, telephoneNumber);
+                return SmsProviderResult.FAILED;
+            }
+        } catch (final InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            return SmsProviderResult.FAILED;
+        }
+
+        try {
+            return sendUnlimited(prefix, routedProvider, type, telephoneNumber, text);
+        } finally {
+            limit.release();
+        }
+    }
+
+    private SmsProviderResult sendUnlimited(final String prefix, final RoutedProvider routedProvider, final TwilioRequestType type, final String telephoneNumber, final String text) {
+        final SmsProvider provider = routedProvider.provider();
+        final long start = System.nanoTime();
+        SmsProviderResult result = SmsProviderResult.FAILED;
+        try {
+            result = switch (type) {
+                case SMS -> provider.sendSms(telephoneNumber, text);
+                case CALL -> provider.call(telephoneNumber, text);
+            };
+        } catch (final RuntimeException e) {
+            log.error("provider '{}' failed sending '{}' request to '{}'", provider.getName(), type, telephoneNumber, e);
+        }
+
+        final long latency = System.nanoTime() - start;
+        switch (result) {
+            case SENT -> {
+                getStats(prefix, provider.getName()).record(true, latency);
+                routedProvider.successes().record(latency, TimeUnit.NANOSECONDS);
+            }
+            case REJECTED -> routedProvider.rejections().record(latency, TimeUnit.NANOSECONDS);
+            case FAILED -> {
+                getStats(prefix, provider.getName()).record(false, latency);
+                routedProvider.failures().record(latency, TimeUnit.NANOSECONDS);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean sendSms(final String telephoneNumber, final String text) {
+        return send(TwilioRequestType.SMS, telephoneNumber, text);
+    }
+
+    @Override
+    public boolean call(final String telephoneNumber, final String text) {
+        return send(TwilioRequestType.CALL, telephoneNumber, text);
+    }
+}
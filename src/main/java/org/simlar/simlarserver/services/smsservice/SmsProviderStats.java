@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsservice;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Keeps outcome and latency of the most recent requests to a provider.
+ * Samples older than the time to live are ignored, so a provider recovers even if it gets no requests.
+ */
+final class SmsProviderStats {
+    private final long timeToLiveNanos;
+    private final boolean[] successes;
+    private final long[] nanos;
+    private final long[] recorded;
+    private int next;
+    private int count;
+
+    record Snapshot(int samples, double successRate, Duration percentile95) {
+    }
+
+    SmsProviderStats(final int capacity, final Duration timeToLive) {
+        timeToLiveNanos = timeToLive.toNanos();
+        successes = new boolean[capacity];
+        nanos = new long[capacity];
+        recorded = new long[capacity];
+    }
+
+    synchronized void record(final boolean success, final long latencyNanos) {
+        successes[next] = success;
+        nanos[next] = latencyNanos;
+        recorded[next] = System.nanoTime();
+        next = (next + 1) % nanos.length;
+        count = Math.min(count + 1, nanos.length);
+    }
+
+    synchronized Snapshot snapshot() {
+        final long now = System.nanoTime();
+        final long[] latencies = new long[count];
+        int samples = 0;
+        int successCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (now - recorded[i] <= timeToLiveNanos) {
+                latencies[samples++] = nanos[i];
+                if (successes[i]) {
+                    successCount++;
+                }
+            }
+        }
+
+        if (samples == 0) {
+            return new Snapshot(0, 1.0, Duration.ZERO);
+        }
+
+        final long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        return new Snapshot(samples, (double) successCount / samples, Duration.ofNanos(sorted[(int) Math.ceil(0.95 * samples) - 1]));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsservice;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "sms.routing")
+record SmsRoutingSettings(
+        @DefaultValue("false")
+        boolean enabled,
+
+        @DefaultValue("twilio")
+        List<String> providers,
+
+        List<Route> routes,
+
+        List<HttpProvider> httpProviders,
+
+        @DefaultValue("100")
+        int window,
+
+        @DefaultValue("20")
+        int minSamples,
+
+        @DefaultValue("0.9")
+        double minSuccessRate,
+
+        @DefaultValue("10m")
+        Duration sampleTimeToLive,
+
+        @DefaultValue("2")
+        int maxConcurrentRequestsPerProvider,
+
+        @DefaultValue("10s")
+        Duration acquireTimeout) {
+
+    SmsRoutingSettings {
+        routes = routes == null ? List.of() : routes;
+        httpProviders = httpProviders == null ? List.of() : httpProviders;
+    }
+
+    /**
+     * Providers for telephone numbers starting with the prefix, e.g. "+49".
+     */
+    record Route(String prefix, List<String> providers) {
+    }
+
+    record HttpProvider(String name, String url, String token) {
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.subscriberservice;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable set of registered simlarIds.
+ * <p>
+ * SimlarIds consist of digits only, so all of them with up to 18 digits are stored as a sorted array of
+ * primitive longs. To keep leading zeros the digits are prefixed with a '1', e.g. "*0001*" becomes 10001.
+ * The very few longer ones are kept in a separate set.
+ */
+final class RegisteredSimlarIds {
+    static final RegisteredSimlarIds EMPTY = new RegisteredSimlarIds(new long[0], Collections.emptySet());
+
+    private static final long NOT_ENCODABLE = -1L;
+    private static final int  MAX_ENCODABLE_DIGITS = 18;
+
+    private final long[] encoded;
+    private final Set<String> notEncodable;
+
+    private RegisteredSimlarIds(final long[] encoded, final Set<String> notEncodable) {
+        this.encoded = encoded;
+        this.notEncodable = notEncodable;
+    }
+
+    static long encode(final String simlarId) {
+        final int digits = simlarId.length() - 2;
+        if (digits < 1 || digits > MAX_ENCODABLE_DIGITS) {
+            return NOT_ENCODABLE;
+        }
+
+        long value = 1L;
+        for (int i = 1; i <= digits; i++) {
+            final char c = simlarId.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_ENCODABLE;
+            }
+            value = value * 10L + (c - '0');
+        }
+
+        return value;
+    }
+
+    boolean contains(final String simlarId) {
+        final long value = encode(simlarId);
+        return value == NOT_ENCODABLE
+                ? notEncodable.contains(simlarId)
+                : Arrays.binarySearch(encoded, value) >= 0;
+    }
+
+    int size() {
+        return encoded.length + notEncodable.size();
+    }
+
+    static Builder builder(final int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    static final class Builder {
+        private long[] encoded;
+        private int size;
+        private final Set<String> notEncodable = new HashSet<>();
+
+        private Builder(final int expectedSize) {
+            encoded = new long[Math.max(16, expectedSize)];
+        }
+
+        Builder add(final String simlarId) {
+            final long value = encode(simlarId);
+            if (value == NOT_ENCODABLE) {
+                notEncodable.add(simlarId);
+                return this;
+            }
+
+            if (size == encoded.length) {
+                encoded = Arrays.copyOf(encoded, encoded.length + (encoded.length >> 1));
+            }
+            encoded[size++] = value;
+            return this;
+        }
+
+        RegisteredSimlarIds build() {
+            Arrays.sort(encoded, 0, size);
+
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || encoded[unique - 1] != encoded[i]) {
+                    encoded[unique++] = encoded[i];
+                }
+            }
+
+            return new RegisteredSimlarIds(unique == encoded.length ? encoded : Arrays.copyOf(encoded, unique), Set.copyOf(notEncodable));
+        }
+    }
+}
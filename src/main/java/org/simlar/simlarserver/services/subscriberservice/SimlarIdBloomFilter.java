@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.subscriberservice;
+
+import org.apache.commons.codec.digest.MurmurHash3;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe bloom filter for simlarIds.
+ * <p>
+ * Adding is possible concurrently to lookups. Removing is not possible at all,
+ * so deleted simlarIds stay false positives until the filter gets rebuilt.
+ */
+final class SimlarIdBloomFilter {
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private SimlarIdBloomFilter(final long bitCount, final int hashCount) {
+        this.bits = new AtomicLongArray(Math.toIntExact((bitCount + 63) / 64));
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+    }
+
+    static SimlarIdBloomFilter create(final long expectedEntries, final double falsePositiveProbability) {
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("falsePositiveProbability=" + falsePositiveProbability);
+        }
+
+        final long entries = Math.max(expectedEntries, 1000);
+        //noinspection NumericCastThatLosesPrecision
+        final long bitCount = Math.max(64, (long) Math.ceil(-entries * Math.log(falsePositiveProbability) / (LN2 * LN2)));
+        //noinspection NumericCastThatLosesPrecision
+        final int hashCount = Math.max(1, (int) Math.round((double) bitCount / entries * LN2));
+        return new SimlarIdBloomFilter(bitCount, hashCount);
+    }
+
+    private static long[] hash(final String simlarId) {
+        return MurmurHash3.hash128x64(simlarId.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private long bitIndex(final long[] hash, final int i) {
+        return Math.floorMod(hash[0] + i * hash[1], bitCount);
+    }
+
+    void add(final String simlarId) {
+        final long[] hash = hash(simlarId);
+        for (int i = 0; i < hashCount; i++) {
+            final long index = bitIndex(hash, i);
+            final int word = (int) (index >>> 6);
+            final long mask = 1L << index;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.weakCompareAndSetVolatile(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    boolean mightContain(final String simlarId) {
+        final long[] hash = hash(simlarId);
+        for (int i = 0; i < hashCount; i++) {
+            final long index = bitIndex(hash, i);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getBitCount() {
+        return bitCount;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+}
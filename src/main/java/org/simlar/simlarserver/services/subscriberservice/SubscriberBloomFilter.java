@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.subscriberservice;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Bloom filter over the simlarIds registered on the configured domain.
+ * <p>
+ * Most contacts in an address book are not registered, and the filter sorts them out
+ * before the remaining ones are looked up in the database.
+ * New subscribers are added immediately. Deleted ones vanish with the next rebuild.
+ */
+@Slf4j
+@Component
+final class SubscriberBloomFilter {
+    private final SubscriberBloomFilterSettings settings;
+    private final SubscriberScanner subscriberScanner;
+    private final TaskScheduler taskScheduler;
+
+    private volatile SimlarIdBloomFilter filter;
+    private volatile SimlarIdBloomFilter building;
+
+    private SubscriberBloomFilter(final SubscriberBloomFilterSettings settings, final SubscriberScanner subscriberScanner, final TaskScheduler taskScheduler) {
+        this.settings = settings;
+        this.subscriberScanner = subscriberScanner;
+        this.taskScheduler = taskScheduler;
+    }
+
+    @SuppressWarnings({"unused", "RedundantSuppression"})
+    @EventListener
+    public void handleApplicationReadyEvent(final ApplicationReadyEvent event) {
+        if (!settings.enabled()) {
+            log.info("subscriber bloom filter disabled");
+            return;
+        }
+
+        taskScheduler.scheduleWithFixedDelay(this::rebuild, Instant.now(), settings.rebuildInterval());
+    }
+
+    boolean mightBeRegistered(final SimlarId simlarId) {
+        final SimlarIdBloomFilter current = filter;
+        return current == null || current.mightContain(simlarId.get());
+    }
+
+    void registered(final SimlarId simlarId) {
+        /// read building before filter, because a rebuild publishes the filter before it clears building
+        final SimlarIdBloomFilter next = building;
+        if (next != null) {
+            next.add(simlarId.get());
+        }
+
+        final SimlarIdBloomFilter current = filter;
+        if (current != null && current != next) {
+            current.add(simlarId.get());
+        }
+    }
+
+    void rebuild() {
+        try {
+            final Instant begin = Instant.now();
+            final long count = subscriberScanner.countRegistered();
+            final SimlarIdBloomFilter next = SimlarIdBloomFilter.create(count + count / 4, settings.falsePositiveProbability());
+            building = next;
+            subscriberScanner.forEachRegistered(settings.batchSize(), next::add);
+            filter = next;
+            log.info("built bloom filter for '{}' subscribers with '{}' bits and '{}' hashes in '{}' ms", count, next.getBitCount(), next.getHashCount(), Duration.between(begin, Instant.now()).toMillis());
+        } catch (final DataAccessException e) {
+            log.error("failed to rebuild subscriber bloom filter", e);
+        } finally {
+            building = null;
+        }
+    }
+}
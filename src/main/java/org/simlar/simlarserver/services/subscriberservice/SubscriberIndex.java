@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.subscriberservice;
+
+import lombok.extern.slf4j.Slf4j;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In memory index of the simlarIds registered on the configured domain.
+ * <p>
+ * The index is loaded after start up and reconciled with the subscriber table periodically.
+ * In between, {@link SubscriberService} reports its own changes.
+ * Changes done by others, e.g. kamailio tools, become visible with the next reconciliation.
+ */
+@Slf4j
+@Component
+final class SubscriberIndex {
+    private final SubscriberIndexSettings settings;
+    private final SubscriberScanner subscriberScanner;
+    private final TaskScheduler taskScheduler;
+
+    private volatile State state = new State(null, Collections.emptyMap(), new ConcurrentHashMap<>());
+
+    /**
+     * @param registered      the last loaded snapshot, null if not loaded, yet
+     * @param previousChanges changes recorded before the currently running reconciliation started
+     * @param changes         changes recorded since the last reconciliation started
+     */
+    private record State(RegisteredSimlarIds registered, Map<String, Boolean> previousChanges, Map<String, Boolean> changes) {
+        boolean contains(final String simlarId) {
+            final Boolean changed = changes.get(simlarId);
+            if (changed != null) {
+                return changed;
+            }
+
+            final Boolean previouslyChanged = previousChanges.get(simlarId);
+            if (previouslyChanged != null) {
+                return previouslyChanged;
+            }
+
+            return registered.contains(simlarId);
+        }
+    }
+
+    private SubscriberIndex(final SubscriberIndexSettings settings, final SubscriberScanner subscriberScanner, final TaskScheduler taskScheduler) {
+        this.settings = settings;
+        this.subscriberScanner = subscriberScanner;
+        this.taskScheduler = taskScheduler;
+    }
+
+    @SuppressWarnings({"unused", "RedundantSuppression"})
+    @EventListener
+    public void handleApplicationReadyEvent(final ApplicationReadyEvent event) {
+        if (!settings.enabled()) {
+            log.info("subscriber index disabled");
+            return;
+        }
+
+        reconcile();
+        taskScheduler.scheduleWithFixedDelay(this::reconcile, Instant.now().plus(settings.reconciliationInterval()), settings.reconciliationInterval());
+    }
+
+    boolean isLoaded() {
+        return state.registered() != null;
+    }
+
+    boolean isRegistered(final SimlarId simlarId) {
+        return state.contains(simlarId.get());
+    }
+
+    void registered(final SimlarId simlarId) {
+        recordChange(simlarId, Boolean.TRUE);
+    }
+
+    void unregistered(final SimlarId simlarId) {
+        recordChange(simlarId, Boolean.FALSE);
+    }
+
+    private void recordChange(final SimlarId simlarId, final Boolean registered) {
+        if (settings.enabled()) {
+            state.changes().put(simlarId.get(), registered);
+        }
+    }
+
+    @SuppressWarnings("NonAtomicOperationOnVolatileField") // reconciliations never overlap
+    void reconcile() {
+        final State before = state;
+        final Map<String, Boolean> changes = new ConcurrentHashMap<>();
+        state = new State(before.registered(), before.changes(), changes);
+
+        try {
+            state = new State(load(), Collections.emptyMap(), changes);
+        } catch (final DataAccessException e) {
+            log.error("failed to reconcile subscriber index", e);
+            final Map<String, Boolean> merged = new ConcurrentHashMap<>(before.changes());
+            merged.putAll(changes);
+            state = new State(before.registered(), Collections.emptyMap(), merged);
+        }
+    }
+
+    private RegisteredSimlarIds load() {
+        final Instant begin = Instant.now();
+        final long count = subscriberScanner.countRegistered();
+        final RegisteredSimlarIds.Builder builder = RegisteredSimlarIds.builder((int) Math.min(count + count / 16, Integer.MAX_VALUE - 8));
+        subscriberScanner.forEachRegistered(settings.batchSize(), builder::add);
+
+        final RegisteredSimlarIds registered = builder.build();
+        log.info("loaded '{}' registered simlarIds in '{}' ms", registered.size(), Duration.between(begin, Instant.now()).toMillis());
+        return registered;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.subscriberservice;
+
+import lombok.AllArgsConstructor;
+import org.simlar.simlarserver.database.repositories.SubscriberRepository;
+import org.simlar.simlarserver.services.SharedSettings;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Walks through all simlarIds registered on the configured domain in batches ordered by id,
+ * so no long-running query or huge result set is needed.
+ */
+@AllArgsConstructor
+@Component
+final class SubscriberScanner {
+    private final SharedSettings sharedSettings;
+    private final SubscriberRepository subscriberRepository;
+
+    long countRegistered() {
+        return subscriberRepository.countByDomain(sharedSettings.domain());
+    }
+
+    void forEachRegistered(final int batchSize, final Consumer<String> consumer) {
+        final String domain = sharedSettings.domain();
+        final PageRequest page = PageRequest.ofSize(batchSize);
+        long lastId = 0;
+        List<SubscriberRepository.IdAndUsername> subscribers;
+        do {
+            subscribers = subscriberRepository.findIdAndUsernameByDomainAndIdGreaterThan(domain, lastId, page);
+            for (final SubscriberRepository.IdAndUsername subscriber : subscribers) {
+                lastId = subscriber.getId();
+                if (SimlarId.create(subscriber.getUsername()) != null) {
+                    consumer.accept(subscriber.getUsername());
+                }
+            }
+        } while (subscribers.size() == batchSize);
+    }
+}
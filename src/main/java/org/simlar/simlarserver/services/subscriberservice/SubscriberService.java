@@ -42,8 +42,10 @@ import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @Slf4j
@@ -52,12 +54,17 @@ public final class SubscriberService {
     private final SharedSettings sharedSettings;
     private final SubscriberRepository subscriberRepository;
     private final TransactionTemplate transactionTemplate;
+    private final SubscriberIndex subscriberIndex;
+    private final SubscriberBloomFilter subscriberBloomFilter;
 
+    @SuppressWarnings("ConstructorWithTooManyParameters")
     @Autowired // fix IntelliJ inspection warning unused
-    private SubscriberService(final SharedSettings sharedSettings, final SubscriberRepository subscriberRepository, final PlatformTransactionManager transactionManager) {
+    private SubscriberService(final SharedSettings sharedSettings, final SubscriberRepository subscriberRepository, final PlatformTransactionManager transactionManager, final SubscriberIndex subscriberIndex, final SubscriberBloomFilter subscriberBloomFilter) {
         this.sharedSettings = sharedSettings;
         this.subscriberRepository = subscriberRepository;
         transactionTemplate = new TransactionTemplate(transactionManager);
+        this.subscriberIndex = subscriberIndex;
+        this.subscriberBloomFilter = subscriberBloomFilter;
     }
 
     public void save(final SimlarId simlarId, final String password) {
@@ -76,6 +83,9 @@ public final class SubscriberService {
                 subscriberRepository.save(subscriber);
             }
         });
+
+        subscriberIndex.registered(simlarId);
+        subscriberBloomFilter.registered(simlarId);
     }
 
     @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // false positive
@@ -126,6 +136,23 @@ public final class SubscriberService {
         return savedHa1s.getFirst();
     }
 
+    /**
+     * Like {@link #getHa1(SimlarId)} for many simlarIds with one query per 100 simlarIds.
+     *
+     * @return ha1 by simlarId, simlarIds without subscriber are missing
+     */
+    public Map<SimlarId, String> getHa1s(final Collection<SimlarId> simlarIds) {
+        final Map<SimlarId, String> ha1s = new HashMap<>();
+        for (final List<String> usernames : ListUtils.partition(simlarIds.stream().map(SimlarId::get).distinct().toList(), 100)) {
+            for (final SubscriberRepository.UsernameAndHa1 saved : subscriberRepository.findUsernameAndHa1ByDomainAndUsernameIn(sharedSettings.domain(), new HashSet<>(usernames))) {
+                if (ha1s.putIfAbsent(SimlarId.create(saved.getUsername()), saved.getHa1()) != null) {
+                    log.error("found more than 1 subscriber for simlarId={}", saved.getUsername());
+                }
+            }
+        }
+        return ha1s;
+    }
+
     @SuppressWarnings("NonBooleanMethodNameMayNotStartWithQuestion")
     public void checkCredentialsWithException(final String simlarId, final String ha1) {
         if (!checkCredentials(simlarId, ha1)) {
@@ -134,7 +161,15 @@ public final class SubscriberService {
     }
 
     public List<SimlarId> filterSimlarIdsRegistered(final Collection<SimlarId> simlarIds) {
+        if (subscriberIndex.isLoaded()) {
+            return simlarIds.stream()
+                    .filter(subscriberIndex::isRegistered)
+                    .distinct()
+                    .toList();
+        }
+
         return ListUtils.partition(simlarIds.stream()
+                        .filter(subscriberBloomFilter::mightBeRegistered)
                         .map(SimlarId::get)
                         .toList(), 100).stream()
                 .map(HashSet::new)
@@ -148,5 +183,6 @@ public final class SubscriberService {
         Objects.requireNonNull(simlarId, "simlarId=" + null);
 
         subscriberRepository.deleteByUsernameAndDomain(simlarId.get(), sharedSettings.domain());
+        subscriberIndex.unregistered(simlarId);
     }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.sweeperservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.simlar.simlarserver.database.repositories.AccountCreationRequestCountRepository;
+import org.simlar.simlarserver.database.repositories.ContactsRequestCountRepository;
+import org.simlar.simlarserver.database.repositories.SchedulerLockRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Deletes rows of simlar_account_creation_request and simlar_contacts_request_count, which have not been updated for longer than the max age.
+ * <p>
+ * The longest window any limit looks at is one day, so a shorter max age is raised to one day.
+ * Rows are walked in simlarId order and deleted in small batches.
+ * A lease in simlar_scheduler_lock ensures only one node of a cluster sweeps at a time.
+ * If a sweep outlasts its lease, it stops and the next run continues.
+ * It pauses between batches, so it runs on its own thread instead of the shared task scheduler.
+ */
+@Slf4j
+@Component
+final class ExpiredRequestsSweeper implements DisposableBean {
+    private static final Duration LONGEST_WINDOW = Duration.ofDays(1);
+    private static final String LOCK_NAME = "expired_requests_sweeper";
+    private static final String NODE = ManagementFactory.getRuntimeMXBean().getName() + '/' + UUID.randomUUID();
+
+    private final ExpiredRequestsSweeperSettings settings;
+    private final AccountCreationRequestCountRepository accountCreationRepository;
+    private final ContactsRequestCountRepository contactsRequestCountRepository;
+    private final SchedulerLockRepository schedulerLockRepository;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("expired-requests-sweeper-"));
+    private final Timer runs;
+    private final Counter skipped;
+    private final Counter accountRequestsDeleted;
+    private final Counter contactsRequestCountsDeleted;
+
+    @SuppressWarnings("ConstructorWithTooManyParameters")
+    private ExpiredRequestsSweeper(final ExpiredRequestsSweeperSettings settings, final AccountCreationRequestCountRepository accountCreationRepository, final ContactsRequestCountRepository contactsRequestCountRepository, final SchedulerLockRepository schedulerLockRepository, final MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.accountCreationRepository = accountCreationRepository;
+        this.contactsRequestCountRepository = contactsRequestCountRepository;
+        this.schedulerLockRepository = schedulerLockRepository;
+        runs = Timer.builder("simlar.sweeper").register(meterRegistry);
+        skipped = Counter.builder("simlar.sweeper.skipped").register(meterRegistry);
+        accountRequestsDeleted = Counter.builder("simlar.sweeper.rows").tag("table", "simlar_account_creation_request").register(meterRegistry);
+        contactsRequestCountsDeleted = Counter.builder("simlar.sweeper.rows").tag("table", "simlar_contacts_request_count").register(meterRegistry);
+    }
+
+    @SuppressWarnings({"unused", "RedundantSuppression"})
+    @EventListener
+    public void handleApplicationReadyEvent(final ApplicationReadyEvent event) {
+        if (!settings.enabled()) {
+            log.info("expired requests sweeper disabled");
+            return;
+        }
+
+        if (settings.maxAge().compareTo(LONGEST_WINDOW) < 0) {
+            log.warn("expired requests sweeper max age '{}' is shorter than the longest window, using '{}'", settings.maxAge(), LONGEST_WINDOW);
+        }
+
+        log.info("expired requests sweeper enabled with max age '{}'", maxAge());
+        executor.scheduleWithFixedDelay(this::run, 0, settings.interval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        try {
+            sweep(Instant.now());
+        } catch (final RuntimeException e) {
+            // an exception would cancel the following runs
+            log.error("sweeping expired requests failed", e);
+        }
+    }
+
+    private Duration maxAge() {
+        return settings.maxAge().compareTo(LONGEST_WINDOW) < 0 ? LONGEST_WINDOW : settings.maxAge();
+    }
+
+    /**
+     * @return the number of deleted rows, 0 if another node holds the lock
+     */
+    int sweep(final Instant now) {
+        final Instant lockedUntil = now.plus(settings.lockDuration());
+        if (!lock(now, lockedUntil)) {
+            log.info("skip sweeping expired requests, because another node holds the lock");
+            skipped.increment();
+            return 0;
+        }
+
+        try {
+            return runs.record(() -> {
+                final Instant before = now.minus(maxAge());
+                final int accountRequests = sweep("simlar_account_creation_request", before, lockedUntil,
+                        accountCreationRepository::findExpiredSimlarIds, accountCreationRepository::deleteExpired, accountRequestsDeleted);
+                final int contactsRequestCounts = sweep("simlar_contacts_request_count", before, lockedUntil,
+                        contactsRequestCountRepository::findExpiredSimlarIds, contactsRequestCountRepository::deleteExpired, contactsRequestCountsDeleted);
+                return accountRequests + contactsRequestCounts;
+            });
+        } finally {
+            unlock();
+        }
+    }
+
+    private boolean lock(final Instant now, final Instant lockedUntil) {
+        try {
+            schedulerLockRepository.create(LOCK_NAME, now, NODE);
+            return schedulerLockRepository.lock(LOCK_NAME, lockedUntil, NODE, now) == 1;
+        } catch (final DataAccessException e) {
+            log.error("failed to lock '{}'", LOCK_NAME, e);
+            return false;
+        }
+    }
+
+    private void unlock() {
+        try {
+            schedulerLockRepository.unlock(LOCK_NAME, Instant.now(), NODE);
+        } catch (final DataAccessException e) {
+            log.error("failed to unlock '{}', it expires with its lease", LOCK_NAME, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ExpiredFinder {
+        List<String> find(final String simlarId, final Instant before, final PageRequest pageRequest);
+    }
+
+    @SuppressWarnings("MethodWithTooManyParameters")
+    private int sweep(final String table, final Instant before, final Instant lockedUntil, final ExpiredFinder finder, final BiFunction<List<String>, Instant, Integer> deleter, final Counter deleted) {
+        int count = 0;
+        String lastSimlarId = "";
+        try {
+            while (Instant.now().isBefore(lockedUntil)) {
+                final List<String> expired = finder.find(lastSimlarId, before, PageRequest.ofSize(settings.batchSize()));
+                if (expired.isEmpty()) {
+                    break;
+                }
+
+                final int deletedRows = deleter.apply(expired, before);
+                deleted.increment(deletedRows);
+                count += deletedRows;
+                lastSimlarId = expired.getLast();
+
+                if (expired.size() < settings.batchSize() || !pause()) {
+                    break;
+                }
+            }
+        } catch (final DataAccessException e) {
+            log.error("failed to sweep '{}' after deleting '{}' rows", table, count, e);
+        }
+
+        if (count > 0) {
+            log.info("deleted '{}' rows of '{}' not updated since '{}'", count, table, before);
+        }
+        return count;
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(settings.batchPause());
+            return true;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("interrupted while sweeping expired requests");
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
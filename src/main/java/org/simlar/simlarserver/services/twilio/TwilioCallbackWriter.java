@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.twilio;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes twilio status callbacks to the sms provider log in batches, so callbacks are acknowledged without waiting for the database.
+ * <p>
+ * Several callbacks of the same session within one batch are coalesced to the latest one.
+ * If the queue is full, callbacks are rejected and the caller has to write them itself.
+ * So a callback is only written if it is not older than the saved one.
+ * If writing a batch fails, its callbacks are written one by one and only those failing again are dropped.
+ * On shutdown the queue is drained.
+ */
+@Slf4j
+@Component
+final class TwilioCallbackWriter implements DisposableBean {
+    private static final String UPDATE_SQL = "UPDATE simlar_sms_provider_log SET callbackTimestamp = ?, status = ?, error = ? WHERE sessionId = ? AND (callbackTimestamp IS NULL OR callbackTimestamp <= ?)";
+
+    private final TwilioCallbackWriterSettings settings;
+    private final JdbcTemplate jdbcTemplate;
+    private final TaskScheduler taskScheduler;
+    private final BlockingQueue<Callback> queue;
+    private final Counter queued;
+    private final Counter rejected;
+    private final Counter coalesced;
+    private final Counter failed;
+    private final Timer flushes;
+
+    record Callback(String sessionId, Instant timestamp, String status, String error) {
+    }
+
+    private TwilioCallbackWriter(final TwilioCallbackWriterSettings settings, final JdbcTemplate jdbcTemplate, final TaskScheduler taskScheduler, final MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.jdbcTemplate = jdbcTemplate;
+        this.taskScheduler = taskScheduler;
+        queue = new ArrayBlockingQueue<>(settings.queueCapacity());
+        queued = Counter.builder("simlar.twilio.callbacks").tag("result", "queued").register(meterRegistry);
+        rejected = Counter.builder("simlar.twilio.callbacks").tag("result", "rejected").register(meterRegistry);
+        coalesced = Counter.builder("simlar.twilio.callbacks").tag("result", "coalesced").register(meterRegistry);
+        failed = Counter.builder("simlar.twilio.callbacks").tag("result", "failed").register(meterRegistry);
+        flushes = Timer.builder("simlar.twilio.callbacks.flush").register(meterRegistry);
+        Gauge.builder("simlar.twilio.callbacks.queued", queue, Collection::size).register(meterRegistry);
+        Gauge.builder("simlar.twilio.callbacks.capacity", queue, BlockingQueue::remainingCapacity).register(meterRegistry);
+    }
+
+    @SuppressWarnings({"unused", "RedundantSuppression"})
+    @EventListener
+    public void handleApplicationReadyEvent(final ApplicationReadyEvent event) {
+        if (!settings.enabled()) {
+            log.info("twilio callback writer disabled");
+            return;
+        }
+
+        taskScheduler.scheduleWithFixedDelay(this::flush, settings.flushInterval());
+    }
+
+    /**
+     * @return false if the callback has not been queued and needs to be written by the caller
+     */
+    boolean offer(final Callback callback) {
+        if (!settings.enabled()) {
+            return false;
+        }
+
+        if (!queue.offer(callback)) {
+            log.warn("twilio callback queue full, writing callback of session '{}' directly", callback.sessionId());
+            rejected.increment();
+            return false;
+        }
+
+        queued.increment();
+        return true;
+    }
+
+    synchronized void flush() {
+        final List<Callback> drained = new ArrayList<>(settings.batchSize());
+        while (queue.drainTo(drained, settings.batchSize()) > 0) {
+            flushes.record(() -> write(coalesce(drained)));
+            drained.clear();
+        }
+    }
+
+    private Collection<Callback> coalesce(final Collection<Callback> callbacks) {
+        final Map<String, Callback> latest = new LinkedHashMap<>();
+        for (final Callback callback : callbacks) {
+            if (latest.remove(callback.sessionId()) != null) {
+                coalesced.increment();
+            }
+            latest.put(callback.sessionId(), callback);
+        }
+        return latest.values();
+    }
+
+    private void write(final Collection<Callback> callbacks) {
+        try {
+            final int[][] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, callbacks, callbacks.size(), (statement, callback) -> {
+                final Timestamp timestamp = Timestamp.from(callback.timestamp());
+                statement.setTimestamp(1, timestamp);
+                statement.setString(2, callback.status());
+                statement.setString(3, callback.error());
+                statement.setString(4, callback.sessionId());
+                statement.setTimestamp(5, timestamp);
+            });
+
+            final List<Callback> written = List.copyOf(callbacks);
+            for (int i = 0; i < written.size() && updated.length > 0 && i < updated[0].length; i++) {
+                if (updated[0][i] == 0) {
+                    log.error("no db entry or a newer callback for twilio callback of session '{}'", written.get(i).sessionId());
+                }
+            }
+        } catch (final DataAccessException e) {
+            log.warn("failed to write '{}' twilio callbacks in a batch, writing them one by one", callbacks.size(), e);
+            callbacks.forEach(this::write);
+        }
+    }
+
+    private void write(final Callback callback) {
+        try {
+            final Timestamp timestamp = Timestamp.from(callback.timestamp());
+            if (jdbcTemplate.update(UPDATE_SQL, timestamp, callback.status(), callback.error(), callback.sessionId(), timestamp) == 0) {
+                log.error("no db entry or a newer callback for twilio callback of session '{}'", callback.sessionId());
+            }
+        } catch (final DataAccessException e) {
+            failed.increment();
+            log.error("dropping twilio callback '{}'", callback, e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        log.info("writing '{}' queued twilio callbacks", queue.size());
+        flush();
+    }
+}
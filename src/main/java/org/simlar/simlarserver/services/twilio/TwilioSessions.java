@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.twilio;
+
+import org.simlar.simlarserver.data.TwilioRequestType;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers recently created sms and call sessions, so twilio callbacks arriving shortly after sending need no lookup by session id.
+ * <p>
+ * Sessions expire after the time to live and the oldest session is evicted if more than maxSessions are remembered.
+ */
+final class TwilioSessions {
+    private final int maxSessions;
+    private final Duration timeToLive;
+    private final Map<String, Entry> sessions = new LinkedHashMap<>();
+
+    record Session(Long id, TwilioRequestType type, String telephoneNumber, String message) {
+    }
+
+    private record Entry(Session session, Instant expires) {
+    }
+
+    TwilioSessions(final int maxSessions, final Duration timeToLive) {
+        this.maxSessions = maxSessions;
+        this.timeToLive = timeToLive;
+    }
+
+    synchronized void put(final String sessionId, final Session session) {
+        final Instant now = Instant.now();
+        sessions.put(sessionId, new Entry(session, now.plus(timeToLive)));
+
+        final Iterator<Entry> oldest = sessions.values().iterator();
+        while (oldest.hasNext()) {
+            final Instant expires = oldest.next().expires();
+            if (sessions.size() <= maxSessions && now.isBefore(expires)) {
+                break;
+            }
+            oldest.remove();
+        }
+    }
+
+    @Nullable
+    synchronized Session get(final String sessionId) {
+        final Entry entry = sessions.get(sessionId);
+        if (entry == null) {
+            return null;
+        }
+
+        if (Instant.now().isAfter(entry.expires())) {
+            sessions.remove(sessionId);
+            return null;
+        }
+
+        return entry.session();
+    }
+
+    synchronized int size() {
+        return sessions.size();
+    }
+}
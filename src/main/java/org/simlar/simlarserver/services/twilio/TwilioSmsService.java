@@ -26,7 +26,6 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
@@ -34,9 +33,12 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.simlar.simlarserver.data.TwilioRequestType;
 import org.simlar.simlarserver.database.models.SmsProviderLog;
 import org.simlar.simlarserver.database.repositories.SmsProviderLogRepository;
+import org.simlar.simlarserver.json.twilio.ErrorResponse;
 import org.simlar.simlarserver.json.twilio.MessageResponse;
 import org.simlar.simlarserver.services.SharedSettings;
-import org.simlar.simlarserver.services.smsservice.SmsService;
+import org.simlar.simlarserver.services.smsservice.SmsProvider;
+import org.simlar.simlarserver.services.smsservice.SmsProviderResult;
+import org.simlar.simlarserver.utils.certificatepinning.HttpClientRegistry;
 import org.simlar.simlarserver.utils.TwilioCallBackErrorCode;
 import org.simlar.simlarserver.xml.XmlTwilioCallResponse;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorNoCallSessionException;
@@ -47,18 +49,49 @@ import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
 
-@AllArgsConstructor
 @Slf4j
 @Component
-public final class TwilioSmsService implements SmsService {
+public final class TwilioSmsService implements SmsProvider {
     public static final String REQUEST_PATH_DELIVERY    = "/twilio/delivery-report.json";
     public static final String REQUEST_PATH_CALL_STATUS = "/twilio/call-status.json";
     public static final String REQUEST_PATH_CALL        = "/twilio/call.xml";
 
+    private static final int MAX_SESSIONS = 10_000;
+    private static final Duration SESSION_TIME_TO_LIVE = Duration.ofMinutes(15);
+    /**
+     * Errors about the 'To' number, other errors like an invalid 'From' number or a trial restriction may be fixed by another provider.
+     */
+    private static final Set<Integer> INVALID_TELEPHONE_NUMBER_ERRORS = Set.of(13223, 13224, 21211, 21217, 21610, 21612, 21614);
+
     private final SharedSettings sharedSettings;
     private final TwilioSettings twilioSettings;
     private final SmsProviderLogRepository smsProviderLogRepository;
+    private final TwilioCallbackWriter twilioCallbackWriter;
+    private final RestTemplate restTemplate;
+    private final TwilioSessions sessions = new TwilioSessions(MAX_SESSIONS, SESSION_TIME_TO_LIVE);
+
+    TwilioSmsService(final SharedSettings sharedSettings, final TwilioSettings twilioSettings, final SmsProviderLogRepository smsProviderLogRepository, final TwilioCallbackWriter twilioCallbackWriter, final HttpClientRegistry httpClientRegistry) {
+        this.sharedSettings = sharedSettings;
+        this.twilioSettings = twilioSettings;
+        this.smsProviderLogRepository = smsProviderLogRepository;
+        this.twilioCallbackWriter = twilioCallbackWriter;
+        final RestTemplateBuilder builder = new RestTemplateBuilder().requestFactory(() -> httpClientRegistry.getRequestFactory(null));
+        restTemplate = twilioSettings.isConfigured()
+                ? builder.basicAuthentication(twilioSettings.sid(), twilioSettings.authToken()).build()
+                : builder.build();
+    }
+
+    @Override
+    public String getName() {
+        return "twilio";
+    }
 
     private String createCallbackBaseUrl() {
         return "https://" +
@@ -66,7 +99,14 @@ public final class TwilioSmsService implements SmsService {
                 sharedSettings.domain() + ':' + sharedSettings.port();
     }
 
-    private String postRequest(final TwilioRequestType type, final String telephoneNumber, final String text) {
+    /**
+     * @param body null if the request failed
+     * @param rejected twilio responded with an error about the telephone number, e.g. an invalid one
+     */
+    private record PostResponse(String body, boolean rejected) {
+    }
+
+    private PostResponse postRequest(final TwilioRequestType type, final String telephoneNumber, final String text) {
         final MultiValueMap<String, String> parameters = new LinkedMultiValueMap<>();
         parameters.add("To", telephoneNumber);
         parameters.add("From", twilioSettings.smsSourceNumber());
@@ -83,19 +123,36 @@ public final class TwilioSmsService implements SmsService {
         }
 
         try {
-            final String response = new RestTemplateBuilder().basicAuthentication(twilioSettings.sid(), twilioSettings.authToken()).build()
+            final String response = restTemplate
                     .postForObject(twilioSettings.getUrl() + type.getUrlPostfix(), parameters, String.class);
 
             log.info("response to '{}' request: '{}'", type, response);
-            return response;
+            return new PostResponse(response, false);
         } catch (final HttpClientErrorException e) {
             log.info("while sending '{}' request to '{}' received error '{}' response '{}'", type, telephoneNumber, e.getMessage(), e.getResponseBodyAsString());
-            return e.getStatusCode() == HttpStatus.BAD_REQUEST ? e.getResponseBodyAsString() : null;
+            return e.getStatusCode() == HttpStatus.BAD_REQUEST
+                    ? new PostResponse(e.getResponseBodyAsString(), isInvalidTelephoneNumberError(e.getResponseBodyAsString()))
+                    : new PostResponse(null, false);
         } catch (final RestClientException e) {
             final String cause = ExceptionUtils.getRootCauseMessage(e);
             log.error("while sending '{}' request to '{}' failed to connect to twilio server '{}'", type, telephoneNumber, cause, e);
             smsProviderLogRepository.save(new SmsProviderLog(type, telephoneNumber, null, "SimlarServerException", cause, text));
-            return null;
+            return new PostResponse(null, false);
+        }
+    }
+
+    static boolean isInvalidTelephoneNumberError(final String response) {
+        if (StringUtils.isEmpty(response)) {
+            return false;
+        }
+
+        try {
+            final ErrorResponse errorResponse = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false).readValue(response, ErrorResponse.class);
+            // Set.of does not allow contains(null)
+            return errorResponse.getCode() != null && INVALID_TELEPHONE_NUMBER_ERRORS.contains(errorResponse.getCode());
+        } catch (final JsonProcessingException e) {
+            log.warn("unable to parse error response '{}'", response, e);
+            return false;
         }
     }
 
@@ -121,7 +178,8 @@ public final class TwilioSmsService implements SmsService {
             }
 
             log.info("while sending '{}' request to '{}' received message response: '{}' ", type, telephoneNumber, messageResponse);
-            smsProviderLogRepository.save(new SmsProviderLog(type, telephoneNumber, messageResponse.getSid(), messageResponse.getStatus(), text));
+            final SmsProviderLog saved = smsProviderLogRepository.save(new SmsProviderLog(type, telephoneNumber, messageResponse.getSid(), messageResponse.getStatus(), text));
+            sessions.put(messageResponse.getSid(), new TwilioSessions.Session(saved.getId(), type, telephoneNumber, text));
             return true;
         } catch (final JsonMappingException | JsonParseException e) {
             log.error("while sending '{}' request to '{}' unable to parse response: '{}'", type, telephoneNumber, response, e);
@@ -134,71 +192,102 @@ public final class TwilioSmsService implements SmsService {
         }
     }
 
-    @SuppressWarnings({"BooleanMethodNameMustStartWithQuestion", "MethodWithMultipleReturnPoints"})
-    private boolean doPostRequest(final TwilioRequestType type, final String telephoneNumber, final String text) {
+    @SuppressWarnings("MethodWithMultipleReturnPoints")
+    private SmsProviderResult doPostRequest(final TwilioRequestType type, final String telephoneNumber, final String text) {
         if (!twilioSettings.isConfigured()) {
             log.error("twilio not configured '{}'", twilioSettings);
             smsProviderLogRepository.save(new SmsProviderLog(type, telephoneNumber, null, "SimlarServerException", "twilio not configured", text));
-            return false;
+            return SmsProviderResult.FAILED;
+        }
+
+        final PostResponse response = postRequest(type, telephoneNumber, text);
+        if (handleResponse(type, telephoneNumber, text, response.body())) {
+            return SmsProviderResult.SENT;
         }
 
-        return handleResponse(type, telephoneNumber, text, postRequest(type, telephoneNumber, text));
+        return response.rejected() ? SmsProviderResult.REJECTED : SmsProviderResult.FAILED;
     }
 
     @Override
-    public boolean sendSms(final String telephoneNumber, final String text) {
+    public SmsProviderResult sendSms(final String telephoneNumber, final String text) {
         return doPostRequest(TwilioRequestType.SMS, telephoneNumber, text);
     }
 
     @Override
-    public boolean call(final String telephoneNumber, final String text) {
+    public SmsProviderResult call(final String telephoneNumber, final String text) {
         return doPostRequest(TwilioRequestType.CALL, telephoneNumber, text);
     }
 
+    @Nullable
+    private TwilioSessions.Session findSession(final String sessionId) {
+        final TwilioSessions.Session session = sessions.get(sessionId);
+        if (session != null) {
+            return session;
+        }
+
+        final SmsProviderLog smsProviderLog = smsProviderLogRepository.findBySessionId(sessionId);
+        return smsProviderLog == null
+                ? null
+                : new TwilioSessions.Session(smsProviderLog.getId(), smsProviderLog.getType(), smsProviderLog.getTelephoneNumber(), smsProviderLog.getMessage());
+    }
+
+    /**
+     * If the callback writer is enabled, the status is written asynchronously and only checked against recently created sessions.
+     */
     public void handleStatusReport(final TwilioRequestType type, final String telephoneNumber, final String messageSid, final String messageStatus, final String errorCode) {
-        final SmsProviderLog smsProviderLog = smsProviderLogRepository.findBySessionId(messageSid);
-        if (smsProviderLog == null) {
+        final String error = TwilioCallBackErrorCode.createString(errorCode);
+        final Instant now = Instant.now();
+        if (twilioCallbackWriter.offer(new TwilioCallbackWriter.Callback(messageSid, now, messageStatus, error))) {
+            final TwilioSessions.Session session = sessions.get(messageSid);
+            if (session != null) {
+                checkStatusReport(session, type, telephoneNumber);
+            }
+            return;
+        }
+
+        final TwilioSessions.Session session = findSession(messageSid);
+        if (session == null) {
             log.error("no db entry");
             return;
         }
 
-        final String savedTelephoneNumber = smsProviderLog.getTelephoneNumber();
+        checkStatusReport(session, type, telephoneNumber);
+        if (smsProviderLogRepository.updateCallback(session.id(), now, messageStatus, error) == 0) {
+            log.info("skipped status report '{}' older than the saved one", messageStatus);
+        }
+    }
+
+    private static void checkStatusReport(final TwilioSessions.Session session, final TwilioRequestType type, final String telephoneNumber) {
+        final String savedTelephoneNumber = session.telephoneNumber();
         if (!Strings.CS.equals(savedTelephoneNumber, telephoneNumber)) {
             log.warn("status report with unequal telephone numbers: saved='{}' received='{}'", savedTelephoneNumber, telephoneNumber);
         }
 
-        final TwilioRequestType savedType = smsProviderLog.getType();
+        final TwilioRequestType savedType = session.type();
         if (savedType != type) {
             log.warn("status report with unequal type: saved='{}' received='{}'", savedType, type);
         }
-
-        smsProviderLog.setCallbackTimestampToNow();
-        smsProviderLog.setStatus(messageStatus);
-        smsProviderLog.setError(TwilioCallBackErrorCode.createString(errorCode));
-        smsProviderLogRepository.save(smsProviderLog);
     }
 
     public XmlTwilioCallResponse handleCall(final String callSid, final String telephoneNumber, final String callStatus) {
-        final SmsProviderLog smsProviderLog = smsProviderLogRepository.findBySessionId(callSid);
-        if (smsProviderLog == null) {
+        final TwilioSessions.Session session = findSession(callSid);
+        if (session == null) {
             log.error("no db entry");
             throw new XmlErrorNoCallSessionException("callSid='" + callSid + "' not found in DB");
         }
 
-        if (smsProviderLog.getType() != TwilioRequestType.CALL) {
-            log.error("call matches db entry for sms: '{}'", smsProviderLog);
+        if (session.type() != TwilioRequestType.CALL) {
+            log.error("call matches db entry for sms: '{}'", session);
             throw new XmlErrorNoCallSessionException("callSid='" + callSid + "' matches SMS");
         }
 
-        final String savedTelephoneNumber = smsProviderLog.getTelephoneNumber();
+        final String savedTelephoneNumber = session.telephoneNumber();
         if (!Strings.CS.equals(savedTelephoneNumber, telephoneNumber)) {
             log.warn("call with unequal telephone numbers: saved='{}' received '{}'", savedTelephoneNumber, telephoneNumber);
         }
 
-        smsProviderLog.setCallbackTimestampToNow();
-        smsProviderLog.setStatus(callStatus);
-        smsProviderLogRepository.save(smsProviderLog);
+        smsProviderLogRepository.updateCallback(session.id(), Instant.now(), callStatus);
 
-        return new XmlTwilioCallResponse(smsProviderLog.getMessage());
+        return new XmlTwilioCallResponse(session.message());
     }
 }
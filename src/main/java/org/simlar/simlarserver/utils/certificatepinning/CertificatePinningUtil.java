@@ -31,23 +31,32 @@ import javax.net.ssl.TrustManager;
 import java.net.http.HttpClient;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Collection;
 
 @SuppressWarnings("UtilityClass")
 public final class CertificatePinningUtil {
+    static final String DEFAULT_SSL_PROTOCOL = "TLSv1.3";
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
     private CertificatePinningUtil() {
         throw new AssertionError("This class was not meant to be instantiated");
     }
 
     @SuppressFBWarnings("EXS_EXCEPTION_SOFTENING_NO_CONSTRAINTS")
-    private static HttpClient createHttpClient(final Collection<String> certificatePinnings, final String sslProtocol, final KeyManager... keyManagers) {
+    static HttpClient createHttpClient(final Collection<String> certificatePinnings, final String sslProtocol, final Duration connectTimeout, final KeyManager... keyManagers) {
         try {
             final SSLContext sslContext = SSLContext.getInstance(sslProtocol);
 
-            final TrustManager[] tm = { new Pinning509TrustManager(certificatePinnings) };
+            // without pinnings, the default trust managers verify the server
+            final TrustManager[] tm = certificatePinnings == null || certificatePinnings.isEmpty()
+                    ? null
+                    : new TrustManager[] { new Pinning509TrustManager(certificatePinnings) };
             sslContext.init(keyManagers, tm, null);
 
             return HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(connectTimeout)
                     .sslContext(sslContext)
                     .build();
         } catch (final NoSuchAlgorithmException | KeyManagementException e) {
@@ -56,12 +65,15 @@ public final class CertificatePinningUtil {
     }
 
     public static RestTemplate createRestTemplate(final Collection<String> certificatePinnings) {
-        return createRestTemplate(certificatePinnings, "TLSv1.3");
+        return createRestTemplate(certificatePinnings, DEFAULT_SSL_PROTOCOL);
     }
 
+    /**
+     * Creates a new client for every call. Prefer {@link HttpClientRegistry} to reuse connections.
+     */
     public static RestTemplate createRestTemplate(final Collection<String> certificatePinnings, final String sslProtocol, final KeyManager... keyManagers) {
         return new RestTemplateBuilder()
-                .requestFactory(() -> new JdkClientHttpRequestFactory(createHttpClient(certificatePinnings, sslProtocol, keyManagers)))
+                .requestFactory(() -> new JdkClientHttpRequestFactory(createHttpClient(certificatePinnings, sslProtocol, DEFAULT_CONNECT_TIMEOUT, keyManagers)))
                 .build();
     }
 }
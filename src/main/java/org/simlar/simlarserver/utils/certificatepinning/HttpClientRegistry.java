@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.utils.certificatepinning;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import javax.net.ssl.KeyManager;
+import java.io.Closeable;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches HTTP clients by certificate pinning, ssl protocol and key material, so connections are kept alive and reused.
+ * <p>
+ * Key managers are compared by identity. So callers have to keep their key managers, e.g. until the certificate changes.
+ * If more than maxClients are in use, the least recently used client is dropped from the cache.
+ * It is not shut down, because callers may still have requests in flight. It closes once it is no longer referenced.
+ * Clients still cached are shut down on {@link #close()}.
+ */
+@Slf4j
+public final class HttpClientRegistry implements Closeable {
+    private final int maxClients;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final Map<Key, Client> clients;
+
+    private record Key(Set<String> certificatePinnings, String sslProtocol, List<KeyManager> keyManagers) {
+    }
+
+    private record Client(HttpClient httpClient, RestTemplate restTemplate, ClientHttpRequestFactory requestFactory) {
+    }
+
+    public HttpClientRegistry(final int maxClients, final Duration connectTimeout, final Duration readTimeout) {
+        this.maxClients = maxClients;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        clients = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public RestTemplate getRestTemplate(final Collection<String> certificatePinnings) {
+        return getRestTemplate(certificatePinnings, CertificatePinningUtil.DEFAULT_SSL_PROTOCOL);
+    }
+
+    public RestTemplate getRestTemplate(final Collection<String> certificatePinnings, final String sslProtocol, final KeyManager... keyManagers) {
+        return getClient(certificatePinnings, sslProtocol, keyManagers).restTemplate();
+    }
+
+    /**
+     * For callers configuring their own RestTemplate, e.g. with basic authentication.
+     */
+    public ClientHttpRequestFactory getRequestFactory(final Collection<String> certificatePinnings) {
+        return getRequestFactory(certificatePinnings, CertificatePinningUtil.DEFAULT_SSL_PROTOCOL);
+    }
+
+    public ClientHttpRequestFactory getRequestFactory(final Collection<String> certificatePinnings, final String sslProtocol, final KeyManager... keyManagers) {
+        return getClient(certificatePinnings, sslProtocol, keyManagers).requestFactory();
+    }
+
+    private synchronized Client getClient(final Collection<String> certificatePinnings, final String sslProtocol, final KeyManager... keyManagers) {
+        final Key key = new Key(
+                certificatePinnings == null ? Set.of() : Set.copyOf(certificatePinnings),
+                sslProtocol,
+                keyManagers == null ? List.of() : List.of(keyManagers));
+
+        final Client cached = clients.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final Client client = createClient(key);
+        clients.put(key, client);
+        log.info("created http client with ssl protocol '{}' and '{}' certificate pinnings, now caching '{}' clients", sslProtocol, key.certificatePinnings().size(), clients.size());
+
+        if (clients.size() > maxClients) {
+            final Map.Entry<Key, Client> eldest = clients.entrySet().iterator().next();
+            clients.remove(eldest.getKey());
+            log.info("dropped least recently used http client with ssl protocol '{}'", eldest.getKey().sslProtocol());
+        }
+
+        return client;
+    }
+
+    private Client createClient(final Key key) {
+        final HttpClient httpClient = CertificatePinningUtil.createHttpClient(key.certificatePinnings(), key.sslProtocol(), connectTimeout,
+                key.keyManagers().toArray(KeyManager[]::new));
+
+        final JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        return new Client(httpClient, new RestTemplate(requestFactory), requestFactory);
+    }
+
+    synchronized int size() {
+        return clients.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        clients.values().forEach(client -> client.httpClient().shutdown());
+        clients.clear();
+    }
+}
@@ -26,6 +26,7 @@ import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorCallNotAllowedAtTheMomentException;
+import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorContactListOutOfSyncException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorFailedToRequestPushNotificationException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorFailedToSendSmsException;
@@ -37,6 +38,7 @@ import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorNoRegistrationCodeExce
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorNoSimlarIdException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorRequestedTooManyContactsException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorTooManyConfirmTriesException;
+import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorTooManyPushNotificationCalleesException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorTooManyRequestTriesException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorUnknownApplePushIdException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorUnknownPushIdTypeException;
@@ -66,9 +68,11 @@ public enum XmlErrorExceptionClientResponse {
         UNKNOWN_PUSH_ID_TYPE       (XmlErrorUnknownPushIdTypeException.class,               30, "unknown push id type"),
         UNKNOWN_APPLE_PUSH_ID      (XmlErrorUnknownApplePushIdException.class,              31, "unknown apple pushId"),
         REQUESTED_TOO_MANY_CONTACTS(XmlErrorRequestedTooManyContactsException.class,        50, "You have requested too many contacts. Try again in 24 hours."),
+        CONTACT_LIST_OUT_OF_SYNC   (XmlErrorContactListOutOfSyncException.class,            51, "contact list out of sync, request the complete list"),
         NO_CALL_SESSION            (XmlErrorNoCallSessionException.class,                   64, "unknown call session"),
         FAILED_TO_TRIGGER_CALL     (XmlErrorFailedToTriggerCallException.class,             65, "failed to call you"),
         CALL_NOT_ALLOWED_ATM       (XmlErrorCallNotAllowedAtTheMomentException.class,       68, "call not allowed at the moment"),
+        TOO_MANY_CALLEES           (XmlErrorTooManyPushNotificationCalleesException.class,  97, "too many push notification callees"),
         PUSH_NOTIFICATION_FAILED   (XmlErrorFailedToRequestPushNotificationException.class, 98, "failed to request push notification")
     ;
 
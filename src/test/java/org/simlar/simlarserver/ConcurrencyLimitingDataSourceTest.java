@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public final class ConcurrencyLimitingDataSourceTest {
+    private static ConcurrencyLimitingDataSource createDataSource(final SimpleMeterRegistry meterRegistry) {
+        final JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:concurrency-limiting");
+        return new ConcurrencyLimitingDataSource(h2, 1, Duration.ofMillis(50), meterRegistry);
+    }
+
+    @Test
+    public void testLimit() throws SQLException {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final ConcurrencyLimitingDataSource dataSource = createDataSource(meterRegistry);
+
+        final Connection connection = dataSource.getConnection();
+        assertTrue(connection.isValid(1));
+        assertEquals(0.0, meterRegistry.get("simlar.database.permits.available").gauge().value(), 0.0);
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+
+        connection.close();
+        connection.close();
+        assertEquals(1.0, meterRegistry.get("simlar.database.permits.available").gauge().value(), 0.0);
+
+        try (Connection other = dataSource.getConnection()) {
+            assertTrue(other.isValid(1));
+            assertEquals(other, other);
+        }
+    }
+}
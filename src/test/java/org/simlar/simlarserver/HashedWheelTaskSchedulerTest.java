@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class HashedWheelTaskSchedulerTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HashedWheelTaskScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new HashedWheelTaskScheduler(new SchedulerSettings(Duration.ofMillis(5), 8, 2), meterRegistry, Executors.newFixedThreadPool(2));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        scheduler.destroy();
+    }
+
+    @Test
+    public void testScheduleNotEarly() throws InterruptedException, ExecutionException, TimeoutException {
+        final List<Instant> executions = new CopyOnWriteArrayList<>();
+        final Instant now = Instant.now();
+        final List<Instant> scheduledTimes = List.of(now.plusMillis(120), now.plusMillis(10), now.plusMillis(60), now.minusMillis(10));
+
+        final List<ScheduledFuture<?>> futures = scheduledTimes.stream()
+                .<ScheduledFuture<?>>map(time -> scheduler.schedule(() -> executions.add(Instant.now()), time))
+                .toList();
+        for (final ScheduledFuture<?> future : futures) {
+            assertNull(future.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(scheduledTimes.size(), executions.size());
+        final List<Instant> sortedExecutions = executions.stream().sorted().toList();
+        final List<Instant> sortedScheduledTimes = scheduledTimes.stream().sorted().toList();
+        for (int i = 0; i < sortedScheduledTimes.size(); i++) {
+            assertFalse(sortedExecutions.get(i).isBefore(sortedScheduledTimes.get(i)));
+        }
+        assertEquals(scheduledTimes.size(), meterRegistry.get("simlar.scheduler.lateness").timer().count());
+        assertEquals(scheduledTimes.size(), meterRegistry.get("simlar.scheduler.execution").timer().count());
+    }
+
+    @Test
+    public void testScheduleSeveralRounds() throws InterruptedException, ExecutionException, TimeoutException {
+        final Instant scheduledTime = Instant.now().plusMillis(200);
+        final ScheduledFuture<?> future = scheduler.schedule(() -> { }, scheduledTime);
+        assertEquals(1, scheduler.getPending());
+
+        future.get(5, TimeUnit.SECONDS);
+        assertFalse(Instant.now().isBefore(scheduledTime));
+        assertEquals(0, scheduler.getPending());
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        final AtomicInteger executions = new AtomicInteger();
+        final ScheduledFuture<?> future = scheduler.schedule(executions::incrementAndGet, Instant.now().plusMillis(50));
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+
+        TimeUnit.MILLISECONDS.sleep(150);
+        assertEquals(0, executions.get());
+        assertEquals(0, scheduler.getPending());
+    }
+
+    @Test
+    public void testFixedDelayContinuesAfterException() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(() -> {
+            latch.countDown();
+            throw new IllegalStateException("test");
+        }, Duration.ofMillis(10));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cancel(false));
+    }
+
+    @Test
+    public void testFixedRate() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(5);
+        final ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(latch::countDown, Duration.ofMillis(10));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cancel(false));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.controllers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.simlar.simlarserver.testdata.TestUser;
+import org.simlar.simlarserver.xml.XmlContact;
+import org.simlar.simlarserver.xml.XmlContactsDelta;
+import org.simlar.simlarserver.xml.XmlError;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(SpringRunner.class)
+public final class ContactsControllerDeltaTest extends BaseControllerTest {
+    private <T> T requestContactStatusDelta(final Class<T> responseClass, final TestUser user, final String version, final String hash, final String added, final String removed) {
+        return postRequest(responseClass, ContactsController.REQUEST_PATH_DELTA, createParameters(new String[][] {
+                { "login", user.getSimlarId() },
+                { "password", user.getPasswordHash() },
+                { "version", version },
+                { "hash", hash },
+                { "added", added },
+                { "removed", removed }
+        }));
+    }
+
+    private XmlContactsDelta requestDelta(final TestUser user, final XmlContactsDelta last, final String added, final String removed) {
+        final XmlContactsDelta response = requestContactStatusDelta(XmlContactsDelta.class, user,
+                last == null ? null : Long.toString(last.getVersion()),
+                last == null ? null : last.getHash(),
+                added, removed);
+        assertNotNull(response);
+        return response;
+    }
+
+    private static void assertContact(final String simlarId, final int status, final XmlContact contact) {
+        assertEquals(simlarId, contact.getSimlarId());
+        assertEquals(status, contact.getStatus());
+    }
+
+    @Test
+    public void testDelta() {
+        final XmlContactsDelta initial = requestDelta(TestUser.U2, null, TestUser.U1.getSimlarId() + '|' + TestUser.SIMLAR_ID_NOT_REGISTERED, null);
+        final List<XmlContact> initialContacts = initial.getContacts();
+        assertNotNull(initialContacts);
+        assertEquals(2, initialContacts.size());
+        assertContact(TestUser.U1.getSimlarId(), 1, initialContacts.get(0));
+        assertContact(TestUser.SIMLAR_ID_NOT_REGISTERED, 0, initialContacts.get(1));
+
+        final XmlContactsDelta unchanged = requestDelta(TestUser.U2, initial, null, null);
+        assertEquals(initial.getVersion() + 1, unchanged.getVersion());
+        assertEquals(initial.getHash(), unchanged.getHash());
+        assertNull(unchanged.getContacts());
+
+        final XmlContactsDelta changed = requestDelta(TestUser.U2, unchanged, TestUser.U3.getSimlarId(), TestUser.SIMLAR_ID_NOT_REGISTERED);
+        final List<XmlContact> changedContacts = changed.getContacts();
+        assertNotNull(changedContacts);
+        assertEquals(1, changedContacts.size());
+        assertContact(TestUser.U3.getSimlarId(), 1, changedContacts.getFirst());
+    }
+
+    @Test
+    public void testOutOfSync() {
+        final XmlContactsDelta initial = requestDelta(TestUser.U3, null, TestUser.U1.getSimlarId(), null);
+
+        final XmlError wrongVersion = requestContactStatusDelta(XmlError.class, TestUser.U3, Long.toString(initial.getVersion() + 1), initial.getHash(), null, null);
+        assertNotNull(wrongVersion);
+        assertEquals(51, wrongVersion.getId());
+
+        final XmlError wrongHash = requestContactStatusDelta(XmlError.class, TestUser.U3, Long.toString(initial.getVersion()), "wrong", null, null);
+        assertNotNull(wrongHash);
+        assertEquals(51, wrongHash.getId());
+    }
+}
@@ -24,18 +24,26 @@ package org.simlar.simlarserver.controllers;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.simlar.simlarserver.services.pushnotification.PushNotificationResult;
 import org.simlar.simlarserver.services.pushnotification.PushNotificationService;
 import org.simlar.simlarserver.services.pushnotification.PushNotificationSettings;
 import org.simlar.simlarserver.utils.SimlarId;
 import org.simlar.simlarserver.xml.XmlError;
+import org.simlar.simlarserver.xml.XmlPushNotificationResult;
 import org.simlar.simlarserver.xml.XmlSuccessSendPushNotification;
+import org.simlar.simlarserver.xml.XmlSuccessSendPushNotifications;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @SuppressWarnings("ClassWithTooManyTransitiveDependencies")
@@ -62,6 +70,7 @@ public final class SendPushNotificationControllerTest extends BaseControllerTest
     @Before
     public void mockSettings() {
         when(pushNotificationSettings.apiKey()).thenReturn(API_KEY);
+        when(pushNotificationSettings.maxCallees()).thenReturn(2);
     }
 
     @Test
@@ -83,9 +92,10 @@ public final class SendPushNotificationControllerTest extends BaseControllerTest
 
     @Test
     public void testSendPushNotificationWithMalformattedSimlarId() {
+        when(pushNotificationsService.sendPushNotificationAsync(null, null)).thenReturn(CompletableFuture.completedFuture(null));
         final XmlError response = postSendPushNotification(XmlError.class, API_KEY, "NoSimlarId", "NoSimlarId2");
 
-        verify(pushNotificationsService).sendPushNotification(eq(null), eq(null));
+        verify(pushNotificationsService).sendPushNotificationAsync(eq(null), eq(null));
         assertNotNull(response);
         assertEquals(98, response.getId());
     }
@@ -98,11 +108,74 @@ public final class SendPushNotificationControllerTest extends BaseControllerTest
         final SimlarId callee = SimlarId.create("*0002*");
         assertNotNull(callee);
 
-        when(pushNotificationsService.sendPushNotification(caller, callee)).thenReturn("someMessageId");
+        when(pushNotificationsService.sendPushNotificationAsync(caller, callee)).thenReturn(CompletableFuture.completedFuture("someMessageId"));
         final XmlSuccessSendPushNotification response = postSendPushNotification(XmlSuccessSendPushNotification.class, API_KEY, caller.get(), callee.get());
 
-        verify(pushNotificationsService).sendPushNotification(eq(caller), eq(callee));
+        verify(pushNotificationsService).sendPushNotificationAsync(eq(caller), eq(callee));
         assertNotNull(response);
         assertEquals("someMessageId", response.getMessageId());
     }
+
+    @Test
+    public void testSendPushNotificationTimeout() {
+        final SimlarId caller = SimlarId.create("*0003*");
+        assertNotNull(caller);
+
+        final SimlarId callee = SimlarId.create("*0004*");
+        assertNotNull(callee);
+
+        when(pushNotificationsService.sendPushNotificationAsync(caller, callee)).thenReturn(CompletableFuture.failedFuture(new TimeoutException()));
+        final XmlError response = postSendPushNotification(XmlError.class, API_KEY, caller.get(), callee.get());
+
+        assertNotNull(response);
+        assertEquals(98, response.getId());
+    }
+
+    @Test
+    public void testSendPushNotifications() {
+        final SimlarId caller = SimlarId.create("*0005*");
+        final SimlarId callee1 = SimlarId.create("*0006*");
+        final SimlarId callee2 = SimlarId.create("*0007*");
+
+        when(pushNotificationsService.sendPushNotificationsAsync(caller, List.of(callee1, callee2))).thenReturn(CompletableFuture.completedFuture(List.of(
+                new PushNotificationResult(callee1, "someMessageId", null),
+                new PushNotificationResult(callee2, null, "TimeoutException"))));
+
+        final XmlSuccessSendPushNotifications response = postRequest(XmlSuccessSendPushNotifications.class, SendPushNotificationController.REQUEST_PATH_BATCH, createParameters(new String[][] {
+                { "apiKey", API_KEY },
+                { "caller", "*0005*" },
+                { "callees", "*0006*|*0007*|NoSimlarId" }
+        }));
+
+        assertNotNull(response);
+        assertEquals(List.of(
+                new XmlPushNotificationResult("*0006*", "someMessageId", null),
+                new XmlPushNotificationResult("*0007*", null, "TimeoutException")),
+                response.getPushNotifications());
+    }
+
+    @Test
+    public void testSendPushNotificationsWithMalformattedCaller() {
+        final XmlError response = postRequest(XmlError.class, SendPushNotificationController.REQUEST_PATH_BATCH, createParameters(new String[][] {
+                { "apiKey", API_KEY },
+                { "caller", "NoSimlarId" },
+                { "callees", "*0006*" }
+        }));
+
+        assertNotNull(response);
+        assertEquals(27, response.getId());
+    }
+
+    @Test
+    public void testSendPushNotificationsWithTooManyCallees() {
+        final XmlError response = postRequest(XmlError.class, SendPushNotificationController.REQUEST_PATH_BATCH, createParameters(new String[][] {
+                { "apiKey", API_KEY },
+                { "caller", "*0005*" },
+                { "callees", "*0006*|*0007*|*0008*" }
+        }));
+
+        verifyNoInteractions(pushNotificationsService);
+        assertNotNull(response);
+        assertEquals(97, response.getId());
+    }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.database.repositories;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.simlar.simlarserver.SimlarServer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = SimlarServer.class)
+public final class ContactsRequestCountRepositoryTest {
+    @Autowired
+    private ContactsRequestCountRepository contactsRequestCountRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testConcurrentUpsertCountsEveryRequest() throws InterruptedException, ExecutionException {
+        final String simlarId = "*4711*";
+        final Instant now = Instant.now();
+        final Instant resetBefore = now.minus(Duration.ofDays(1));
+        final int requests = 20;
+
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                /// a single contact with a different hash increments the counter
+                final String hash = "hash" + i;
+                futures.add(executor.submit(() -> transactionTemplate.executeWithoutResult(status ->
+                        contactsRequestCountRepository.upsert(simlarId, now, hash, 1, resetBefore))));
+            }
+
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(Integer.valueOf(requests), contactsRequestCountRepository.findCountBySimlarId(simlarId));
+    }
+}
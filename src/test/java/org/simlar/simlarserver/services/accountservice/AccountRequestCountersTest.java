@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.accountservice;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.simlar.simlarserver.SimlarServer;
+import org.simlar.simlarserver.data.AccountRequestType;
+import org.simlar.simlarserver.database.models.AccountCreationRequestCount;
+import org.simlar.simlarserver.database.repositories.AccountCreationRequestCountRepository;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+
+@SuppressWarnings("PMD.AvoidUsingHardCodedIP")
+@DirtiesContext
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = SimlarServer.class, properties = {
+        "create.account.sliding-windows.enabled = true",
+        "create.account.sliding-windows.batchSize = 2",
+        "create.account.regionalSettings[0].regionCode = 170",
+        "create.account.regionalSettings[0].maxRequestsPerHour = 4"
+})
+public final class AccountRequestCountersTest {
+    @Autowired
+    private AccountRequestCounters accountRequestCounters;
+
+    @Autowired
+    private AccountCreationRequestCountRepository accountCreationRepository;
+
+    private void saveRequest(final String simlarId, final String ip, final Instant timestamp, final int requestTries) {
+        final AccountCreationRequestCount request = new AccountCreationRequestCount(simlarId, AccountRequestType.CREATE, "password", "123456", timestamp, ip);
+        request.setRequestTries(requestTries);
+        accountCreationRepository.save(request);
+    }
+
+    @Test
+    public void testRebuildAndAdd() {
+        final Instant now = Instant.now();
+        final int totalPerHour = accountRequestCounters.requestsTotalPerHour(now);
+        final int totalPerDay = accountRequestCounters.requestsTotalPerDay(now);
+
+        saveRequest("*17001*", "10.0.0.1", now.minus(Duration.ofMinutes(10)), 2);
+        saveRequest("*17002*", "10.0.0.1", now.minus(Duration.ofMinutes(20)), 1);
+        saveRequest("*18001*", "10.0.0.2", now.minus(Duration.ofHours(3)), 3);
+        saveRequest("*18002*", "10.0.0.3", now.minus(Duration.ofDays(2)), 5);
+        accountRequestCounters.rebuild(now);
+
+        assertEquals(3, accountRequestCounters.requestsPerIp("10.0.0.1", now).intValue());
+        assertEquals(0, accountRequestCounters.requestsPerIp("10.0.0.2", now).intValue());
+        assertEquals(0, accountRequestCounters.requestsPerIp("10.0.0.3", now).intValue());
+        assertEquals(totalPerHour + 3, accountRequestCounters.requestsTotalPerHour(now).intValue());
+        assertEquals(totalPerDay + 6, accountRequestCounters.requestsTotalPerDay(now).intValue());
+        final RegionTrie.Region region = accountRequestCounters.findRegion(SimlarId.create("*17001*"));
+        assertEquals(3, accountRequestCounters.requestsPerRegion(region, now).intValue());
+
+        accountRequestCounters.add("10.0.0.1", SimlarId.create("*17003*"), now);
+        assertEquals(4, accountRequestCounters.requestsPerIp("10.0.0.1", now).intValue());
+        assertEquals(4, accountRequestCounters.requestsPerRegion(region, now).intValue());
+        assertEquals(0, accountRequestCounters.requestsPerRegion(region, now.plus(Duration.ofHours(1))).intValue());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.accountservice;
+
+import org.junit.Test;
+import org.simlar.simlarserver.utils.SimlarId;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public final class RegionTrieTest {
+    private static final RegionTrie TRIE = new RegionTrie(List.of(
+            new RegionalSettings("1", 100),
+            new RegionalSettings("160", 10),
+            new RegionalSettings("1605", 5),
+            new RegionalSettings("160", 8),
+            new RegionalSettings("49", 20),
+            new RegionalSettings("4a", 1),
+            new RegionalSettings(null, 1)));
+
+    private static List<String> findAll(final String simlarId) {
+        return TRIE.findAll(SimlarId.create(simlarId)).stream().map(RegionTrie.Region::getRegionCode).toList();
+    }
+
+    private static String findLongest(final String simlarId) {
+        final RegionTrie.Region region = TRIE.findLongest(SimlarId.create(simlarId));
+        return region == null ? null : region.getRegionCode();
+    }
+
+    @Test
+    public void testSize() {
+        assertEquals(4, TRIE.size());
+    }
+
+    @Test
+    public void testFindAll() {
+        assertEquals(List.of("1", "160", "1605"), findAll("*16050012345*"));
+        assertEquals(List.of("1", "160"), findAll("*16040012345*"));
+        assertEquals(List.of("1"), findAll("*15005012345*"));
+        assertEquals(List.of("49"), findAll("*4917612345*"));
+        assertEquals(List.of(), findAll("*3312345*"));
+    }
+
+    @Test
+    public void testFindLongest() {
+        assertEquals("1605", findLongest("*16050012345*"));
+        assertEquals("160", findLongest("*16040012345*"));
+        assertEquals("49", findLongest("*4917612345*"));
+        assertNull(findLongest("*3312345*"));
+    }
+
+    @Test
+    public void testDuplicatesUseLowestLimit() {
+        assertEquals(8, TRIE.findLongest(SimlarId.create("*1604*")).getMaxRequestsPerHour());
+    }
+
+    @Test
+    public void testEmptyRegionCodeMatchesAll() {
+        final RegionTrie trie = new RegionTrie(List.of(new RegionalSettings("", 3)));
+        final RegionTrie.Region region = trie.findLongest(SimlarId.create("*3312345*"));
+        assertEquals("", region.getRegionCode());
+        assertSame(region, trie.findAll(SimlarId.create("*49*")).getFirst());
+    }
+}
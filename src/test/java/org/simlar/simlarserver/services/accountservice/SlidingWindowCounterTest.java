@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.accountservice;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+
+public final class SlidingWindowCounterTest {
+    private static final Instant START = Instant.parse("2024-01-01T12:00:00Z");
+
+    private static Instant minutes(final long minutes) {
+        return START.plus(Duration.ofMinutes(minutes));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, new SlidingWindowCounter(60).sum(START));
+    }
+
+    @Test
+    public void testSlide() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(60);
+        counter.add(minutes(0), 1);
+        counter.add(minutes(0).plusSeconds(59), 2);
+        counter.add(minutes(30), 4);
+        assertEquals(7, counter.sum(minutes(30)));
+        assertEquals(7, counter.sum(minutes(59)));
+        assertEquals(4, counter.sum(minutes(60)));
+        assertEquals(4, counter.sum(minutes(89)));
+        assertEquals(0, counter.sum(minutes(90)));
+    }
+
+    @Test
+    public void testAddOlderWithinWindow() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(60);
+        counter.add(minutes(100), 1);
+        counter.add(minutes(41), 2);
+        counter.add(minutes(40), 4);
+        assertEquals(3, counter.sum(minutes(100)));
+        assertEquals(1, counter.sum(minutes(101)));
+    }
+
+    @Test
+    public void testJumpBeyondWindow() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(60);
+        counter.add(minutes(0), 5);
+        counter.add(minutes(1000), 1);
+        assertEquals(1, counter.sum(minutes(1000)));
+        assertEquals(1, counter.sum(minutes(999)));
+    }
+}
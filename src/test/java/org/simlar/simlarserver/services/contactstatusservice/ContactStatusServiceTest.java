@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.contactstatusservice;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.simlar.simlarserver.SimlarServer;
+import org.simlar.simlarserver.services.subscriberservice.SubscriberService;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+
+@DirtiesContext
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = SimlarServer.class, properties = "contacts.status.bucketDuration = 1s")
+public final class ContactStatusServiceTest {
+    @Autowired
+    private ContactStatusService contactStatusService;
+
+    @MockitoSpyBean
+    private SubscriberService subscriberService;
+
+    @Test
+    public void testRequestsInSameBucketShareDetection() throws InterruptedException, ExecutionException, TimeoutException {
+        final SimlarId registered1 = SimlarId.create("*4001*");
+        final SimlarId registered2 = SimlarId.create("*4002*");
+        final SimlarId notRegistered = SimlarId.create("*4003*");
+        subscriberService.save(registered1, "password1");
+        subscriberService.save(registered2, "password2");
+
+        final Instant time = Instant.now();
+        final CompletableFuture<Set<SimlarId>> result1 = new CompletableFuture<>();
+        final CompletableFuture<Set<SimlarId>> result2 = new CompletableFuture<>();
+        contactStatusService.schedule(time, List.of(registered1, notRegistered), result1::complete, result1::completeExceptionally);
+        contactStatusService.schedule(time, List.of(registered2), result2::complete, result2::completeExceptionally);
+
+        assertEquals(Set.of(registered1, registered2), result1.get(5, TimeUnit.SECONDS));
+        assertSame(result1.get(), result2.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailingCallbackDoesNotAffectOthers() throws InterruptedException, ExecutionException, TimeoutException {
+        final Instant time = Instant.now();
+        final CompletableFuture<Set<SimlarId>> result = new CompletableFuture<>();
+        contactStatusService.schedule(time, List.of(SimlarId.create("*4004*")), registered -> {
+            throw new IllegalStateException("test");
+        }, result::completeExceptionally);
+        contactStatusService.schedule(time, List.of(SimlarId.create("*4005*")), result::complete, result::completeExceptionally);
+
+        assertEquals(Set.of(), result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailingDetectionIsPassedToEveryRequest() {
+        final SimlarId failing = SimlarId.create("*4006*");
+        final IllegalStateException exception = new IllegalStateException("test");
+        doThrow(exception).when(subscriberService).filterSimlarIdsRegistered(argThat((Collection<SimlarId> contacts) -> contacts.contains(failing)));
+
+        final Instant time = Instant.now();
+        final CompletableFuture<Set<SimlarId>> result1 = new CompletableFuture<>();
+        final CompletableFuture<Set<SimlarId>> result2 = new CompletableFuture<>();
+        contactStatusService.schedule(time, List.of(failing), result1::complete, result1::completeExceptionally);
+        contactStatusService.schedule(time, List.of(SimlarId.create("*4007*")), result2::complete, result2::completeExceptionally);
+
+        assertSame(exception, assertThrows(ExecutionException.class, () -> result1.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(exception, assertThrows(ExecutionException.class, () -> result2.get(5, TimeUnit.SECONDS)).getCause());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.delaycalculatorservice;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.simlar.simlarserver.SimlarServer;
+import org.simlar.simlarserver.database.models.ContactsRequestCount;
+import org.simlar.simlarserver.database.repositories.ContactsRequestCountRepository;
+import org.simlar.simlarserver.helper.SimlarIds;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@DirtiesContext
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = SimlarServer.class, properties = {
+        "contacts.request-count.write-behind.enabled = true",
+        "contacts.request-count.write-behind.flushInterval = 1h",
+        "contacts.request-count.write-behind.batchSize = 2"
+})
+public final class ContactsRequestCountersTest {
+    @Autowired
+    private DelayCalculatorService delayCalculatorService;
+
+    @Autowired
+    private ContactsRequestCounters contactsRequestCounters;
+
+    @Autowired
+    private ContactsRequestCountRepository contactsRequestCountRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testCalculateTotalRequestedContacts() {
+        final SimlarId simlarId = SimlarId.create("*5001*");
+        final Instant now = Instant.now();
+
+        assertEquals(0, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(0), now));
+        assertEquals(1, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(1), now));
+        assertEquals(1, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(0), now));
+        assertEquals(3, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(2), now));
+        assertEquals(3, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(2), now));
+        assertEquals(6, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(3), now));
+        assertEquals(3, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(3), now.plus(Duration.ofDays(1)).plusSeconds(2)));
+    }
+
+    @Test
+    public void testFlush() {
+        final SimlarId simlarId1 = SimlarId.create("*5002*");
+        final SimlarId simlarId2 = SimlarId.create("*5003*");
+        final SimlarId simlarId3 = SimlarId.create("*5004*");
+        final Instant now = Instant.now();
+
+        assertEquals(5, delayCalculatorService.calculateTotalRequestedContacts(simlarId1, SimlarIds.createContacts(5), now));
+        assertEquals(6, delayCalculatorService.calculateTotalRequestedContacts(simlarId2, SimlarIds.createContacts(6), now));
+        assertEquals(7, delayCalculatorService.calculateTotalRequestedContacts(simlarId3, SimlarIds.createContacts(7), now));
+        assertNull(contactsRequestCountRepository.findBySimlarId(simlarId1.get()));
+
+        contactsRequestCounters.flush(now);
+        assertEquals(5, contactsRequestCountRepository.findBySimlarId(simlarId1.get()).getCount());
+        assertEquals(6, contactsRequestCountRepository.findBySimlarId(simlarId2.get()).getCount());
+        assertEquals(7, contactsRequestCountRepository.findBySimlarId(simlarId3.get()).getCount());
+
+        assertEquals(13, delayCalculatorService.calculateTotalRequestedContacts(simlarId1, SimlarIds.createContacts(8), now));
+        contactsRequestCounters.flush(now);
+        assertEquals(13, contactsRequestCountRepository.findBySimlarId(simlarId1.get()).getCount());
+    }
+
+    @Test
+    public void testFlushKeepsRequestsCountedByOtherNodes() {
+        final SimlarId simlarId = SimlarId.create("*5008*");
+        final Instant now = Instant.now();
+
+        assertEquals(5, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(5), now));
+        contactsRequestCounters.flush(now);
+
+        /// another node without write behind
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                contactsRequestCountRepository.upsert(simlarId.get(), now, "other", 4, now.minus(Duration.ofDays(1))));
+        assertEquals(9, contactsRequestCountRepository.findBySimlarId(simlarId.get()).getCount());
+
+        assertEquals(13, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(8), now));
+        contactsRequestCounters.flush(now);
+        assertEquals(17, contactsRequestCountRepository.findBySimlarId(simlarId.get()).getCount());
+    }
+
+    @Test
+    public void testLoad() {
+        final SimlarId simlarId = SimlarId.create("*5005*");
+        final SimlarId simlarIdExpired = SimlarId.create("*5006*");
+        final Instant now = Instant.now();
+
+        contactsRequestCountRepository.save(new ContactsRequestCount(simlarId, now, "hash", 20));
+        contactsRequestCountRepository.save(new ContactsRequestCount(simlarIdExpired, now.minus(Duration.ofDays(2)), "hash", 30));
+        contactsRequestCounters.load(now);
+
+        assertEquals(22, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(2), now));
+        assertEquals(2, delayCalculatorService.calculateTotalRequestedContacts(simlarIdExpired, SimlarIds.createContacts(2), now));
+    }
+
+    @Test
+    public void testExpire() {
+        final SimlarId simlarId = SimlarId.create("*5007*");
+        final Instant twoDaysAgo = Instant.now().minus(Duration.ofDays(2));
+
+        assertEquals(40, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(40), twoDaysAgo));
+        contactsRequestCounters.flush(Instant.now());
+        contactsRequestCounters.flush(Instant.now());
+
+        assertEquals(1, delayCalculatorService.calculateTotalRequestedContacts(simlarId, SimlarIds.createContacts(1), Instant.now()));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class PushCircuitBreakerTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private double transitions(final String state) {
+        return meterRegistry.counter("simlar.push.circuit.transitions", "provider", "google", "state", state).count();
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        final PushCircuitBreaker circuitBreaker = new PushCircuitBreaker(PushProvider.GOOGLE, 3, Duration.ofMinutes(1), meterRegistry);
+
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        assertEquals(PushCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onFailure();
+        assertEquals(PushCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(1, transitions("open"), 0.0);
+        assertEquals(2, meterRegistry.get("simlar.push.circuit.state").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testHalfOpenProbe() throws InterruptedException {
+        final PushCircuitBreaker circuitBreaker = new PushCircuitBreaker(PushProvider.GOOGLE, 1, Duration.ofMillis(20), meterRegistry);
+
+        circuitBreaker.onFailure();
+        assertFalse(circuitBreaker.tryAcquire());
+        Thread.sleep(30);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(PushCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onFailure();
+        assertEquals(PushCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Thread.sleep(30);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onSuccess();
+        assertEquals(PushCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+
+        assertEquals(2, transitions("open"), 0.0);
+        assertEquals(2, transitions("half_open"), 0.0);
+        assertEquals(1, transitions("closed"), 0.0);
+    }
+
+    @Test
+    public void testReleaseProbe() throws InterruptedException {
+        final PushCircuitBreaker circuitBreaker = new PushCircuitBreaker(PushProvider.GOOGLE, 1, Duration.ofMillis(20), meterRegistry);
+
+        circuitBreaker.onFailure();
+        Thread.sleep(30);
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.release();
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+
+package org.simlar.simlarserver.services.pushnotification;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class PushNotificationDispatcherTest {
+    private static ResourceAccessException resourceAccessException(final IOException cause) {
+        return new ResourceAccessException("I/O error", cause);
+    }
+
+    @Test
+    public void testIsTransient() {
+        assertTrue(PushNotificationDispatcher.isTransient(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS)));
+        assertTrue(PushNotificationDispatcher.isTransient(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE)));
+        assertTrue(PushNotificationDispatcher.isTransient(resourceAccessException(new ConnectException("Connection refused"))));
+        assertTrue(PushNotificationDispatcher.isTransient(resourceAccessException(new HttpConnectTimeoutException("HTTP connect timed out"))));
+        assertTrue(PushNotificationDispatcher.isTransient(resourceAccessException(new UnknownHostException("api.push.apple.com"))));
+        assertTrue(PushNotificationDispatcher.isTransient(resourceAccessException(new IOException("wrapped", new ConnectException("Connection refused")))));
+
+        assertFalse(PushNotificationDispatcher.isTransient(new HttpClientErrorException(HttpStatus.BAD_REQUEST)));
+        assertFalse(PushNotificationDispatcher.isTransient(resourceAccessException(new HttpTimeoutException("request timed out"))));
+        assertFalse(PushNotificationDispatcher.isTransient(resourceAccessException(new SocketTimeoutException("Read timed out"))));
+        assertFalse(PushNotificationDispatcher.isTransient(resourceAccessException(new IOException("Connection reset"))));
+        assertFalse(PushNotificationDispatcher.isTransient(new TimeoutException()));
+    }
+}
@@ -23,6 +23,7 @@ package org.simlar.simlarserver.services.pushnotification;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.simlar.simlarserver.SimlarServer;
 import org.simlar.simlarserver.data.ApplePushServer;
 import org.simlar.simlarserver.data.DeviceType;
@@ -36,21 +37,41 @@ import org.simlar.simlarserver.utils.AesUtil;
 import org.simlar.simlarserver.utils.SimlarId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
 @RunWith(SpringRunner.class)
-@SpringBootTest(classes = SimlarServer.class)
+@SpringBootTest(classes = SimlarServer.class, properties = {
+        "push.dispatch.googleTimeout = 100ms",
+        "push.dispatch.retryBackoff = 1ms",
+        "push.registration.cache.enabled = true",
+        "push.coalescing.enabled = true"
+})
 public final class PushNotificationServiceTest {
     @Autowired
     private PushNotificationsRepository pushNotificationsRepository;
@@ -70,6 +91,9 @@ public final class PushNotificationServiceTest {
     @Autowired
     private PushNotificationService pushNotificationService;
 
+    @Autowired
+    private PushRegistrationCache pushRegistrationCache;
+
     @Test
     public void testRequestPushNotificationWithNull() {
         assertNull(pushNotificationService.sendPushNotification(null, null));
@@ -104,6 +128,25 @@ public final class PushNotificationServiceTest {
                 eq("someToken"));
     }
 
+    @Test
+    public void testRequestApplePushNotificationCachedWithCurrentPasswordHash() {
+        final SimlarId caller1 = SimlarId.create("*64321*");
+        final SimlarId caller2 = SimlarId.create("*64322*");
+        final SimlarId callee = SimlarId.create("*12360*");
+        assertNotNull(callee);
+        pushNotificationsRepository.save(new PushNotification(callee.get(), DeviceType.IOS_VOIP, "cachedAppleToken"));
+
+        when(subscriberService.getHa1(callee)).thenReturn("oldPasswordHash", "newPasswordHash");
+        when(applePushNotificationService.requestVoipPushNotification(eq(ApplePushServer.PRODUCTION), any(ApplePushNotificationRequestCaller.class), eq("cachedAppleToken"))).thenReturn("cachedAppleMessageId");
+        assertEquals("cachedAppleMessageId", pushNotificationService.sendPushNotification(caller1, callee));
+        assertEquals("cachedAppleMessageId", pushNotificationService.sendPushNotification(caller2, callee));
+
+        final ArgumentCaptor<ApplePushNotificationRequestCaller> callers = ArgumentCaptor.forClass(ApplePushNotificationRequestCaller.class);
+        verify(applePushNotificationService, times(2)).requestVoipPushNotification(eq(ApplePushServer.PRODUCTION), callers.capture(), eq("cachedAppleToken"));
+        final ApplePushNotificationRequestCaller second = callers.getAllValues().getLast();
+        assertEquals(caller2.get(), AesUtil.decrypt(second.encryptedSimlarId(), second.initializationVector(), "newPasswordHash"));
+    }
+
     @Test
     public void testRequestApplePushNotificationDevelopment() {
         final SimlarId caller = SimlarId.create("*34321*");
@@ -130,8 +173,175 @@ public final class PushNotificationServiceTest {
         verify(googlePushNotificationService).requestPushNotification(eq("someToken"));
     }
 
+    @Test
+    public void testRequestPushNotificationAsync() throws ExecutionException, InterruptedException {
+        pushNotificationsRepository.save(new PushNotification("*12347*", DeviceType.ANDROID, "asyncToken"));
+
+        when(googlePushNotificationService.requestPushNotification("asyncToken")).thenReturn("asyncMessageId");
+        assertEquals("asyncMessageId", pushNotificationService.sendPushNotificationAsync(SimlarId.create("*74321*"), SimlarId.create("*12347*")).get());
+        assertNull(pushNotificationService.sendPushNotificationAsync(SimlarId.create("*74321*"), SimlarId.create("*12348*")).get());
+    }
+
+    @Test
+    public void testRequestPushNotificationAsyncTimeout() {
+        pushNotificationsRepository.save(new PushNotification("*12349*", DeviceType.ANDROID, "slowToken"));
+
+        doAnswer(invocation -> {
+            Thread.sleep(1000);
+            return "slowMessageId";
+        }).when(googlePushNotificationService).requestPushNotification("slowToken");
+
+        final ExecutionException exception = assertThrows(ExecutionException.class, () ->
+                pushNotificationService.sendPushNotificationAsync(SimlarId.create("*94321*"), SimlarId.create("*12349*")).get());
+        assertTrue(exception.getCause() instanceof TimeoutException);
+    }
+
+    @Test
+    public void testRequestPushNotificationAsyncRetry() throws ExecutionException, InterruptedException {
+        pushNotificationsRepository.save(new PushNotification("*12357*", DeviceType.ANDROID, "retryToken"));
+
+        when(googlePushNotificationService.requestPushNotification("retryToken"))
+                .thenThrow(HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", HttpHeaders.EMPTY, null, null))
+                .thenReturn("retryMessageId");
+        assertEquals("retryMessageId", pushNotificationService.sendPushNotificationAsync(SimlarId.create("*34322*"), SimlarId.create("*12357*")).get());
+        verify(googlePushNotificationService, times(2)).requestPushNotification("retryToken");
+    }
+
+    @Test
+    public void testRequestPushNotificationCached() {
+        final SimlarId callee = SimlarId.create("*12358*");
+        assertNotNull(callee);
+        pushNotificationsRepository.save(new PushNotification(callee.get(), DeviceType.ANDROID, "cachedToken"));
+        when(googlePushNotificationService.requestPushNotification("cachedToken")).thenReturn("cachedMessageId");
+        when(googlePushNotificationService.requestPushNotification("changedToken")).thenReturn("changedMessageId");
+
+        assertEquals("cachedMessageId", pushNotificationService.sendPushNotification(SimlarId.create("*44322*"), callee));
+        pushNotificationsRepository.save(new PushNotification(callee.get(), DeviceType.ANDROID, "changedToken"));
+        assertEquals("cachedMessageId", pushNotificationService.sendPushNotification(SimlarId.create("*44322*"), callee));
+
+        pushRegistrationCache.invalidate(callee);
+        assertEquals("changedMessageId", pushNotificationService.sendPushNotification(SimlarId.create("*44322*"), callee));
+    }
+
+    @Test
+    public void testFailedPushNotificationIsNotCoalesced() throws ExecutionException, InterruptedException {
+        pushNotificationsRepository.save(new PushNotification("*12361*", DeviceType.ANDROID, "failedCoalescedToken"));
+
+        when(googlePushNotificationService.requestPushNotification("failedCoalescedToken")).thenThrow(HttpClientErrorException.create(
+                HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY,
+                "{\"error\":{\"code\":400,\"status\":\"INVALID_ARGUMENT\"}}".getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.UTF_8)).thenReturn("failedCoalescedMessageId");
+
+        assertThrows(ExecutionException.class, () -> pushNotificationService.sendPushNotificationAsync(SimlarId.create("*74322*"), SimlarId.create("*12361*")).get());
+        assertEquals("failedCoalescedMessageId", pushNotificationService.sendPushNotificationAsync(SimlarId.create("*74322*"), SimlarId.create("*12361*")).get());
+        verify(googlePushNotificationService, times(2)).requestPushNotification("failedCoalescedToken");
+    }
+
+    @Test
+    public void testRequestPushNotificationAsyncCoalesced() throws ExecutionException, InterruptedException {
+        pushNotificationsRepository.save(new PushNotification("*12359*", DeviceType.ANDROID, "coalescedToken"));
+
+        doAnswer(invocation -> {
+            Thread.sleep(30);
+            return "coalescedMessageId";
+        }).when(googlePushNotificationService).requestPushNotification("coalescedToken");
+
+        final CompletableFuture<String> first = pushNotificationService.sendPushNotificationAsync(SimlarId.create("*54322*"), SimlarId.create("*12359*"));
+        final CompletableFuture<String> second = pushNotificationService.sendPushNotificationAsync(SimlarId.create("*54322*"), SimlarId.create("*12359*"));
+        assertEquals("coalescedMessageId", first.get());
+        assertEquals("coalescedMessageId", second.get());
+        assertEquals("coalescedMessageId", pushNotificationService.sendPushNotificationAsync(SimlarId.create("*54322*"), SimlarId.create("*12359*")).get());
+        verify(googlePushNotificationService, times(1)).requestPushNotification("coalescedToken");
+
+        when(googlePushNotificationService.requestPushNotification("coalescedToken")).thenReturn("otherCallerMessageId");
+        assertEquals("otherCallerMessageId", pushNotificationService.sendPushNotificationAsync(SimlarId.create("*64322*"), SimlarId.create("*12359*")).get());
+    }
+
     @Test
     public void testRequestPushNotificationWithUnknownSimlarId() {
         assertNull(pushNotificationService.sendPushNotification(SimlarId.create("*64321*"), SimlarId.create("*12346*")));
     }
+
+    @Test
+    public void testRequestPushNotifications() throws ExecutionException, InterruptedException {
+        final SimlarId caller = SimlarId.create("*84321*");
+        final SimlarId android = SimlarId.create("*12350*");
+        final SimlarId apple = SimlarId.create("*12351*");
+        final SimlarId unsupported = SimlarId.create("*12352*");
+        final SimlarId unknown = SimlarId.create("*12353*");
+        assertNotNull(caller);
+        pushNotificationsRepository.save(new PushNotification("*12350*", DeviceType.ANDROID, "batchAndroidToken"));
+        pushNotificationsRepository.save(new PushNotification("*12351*", DeviceType.IOS_VOIP, "batchAppleToken"));
+        pushNotificationsRepository.save(new PushNotification("*12352*", DeviceType.IOS, "batchUnsupportedToken"));
+
+        when(subscriberService.getHa1s(List.of(apple))).thenReturn(Map.of(apple, "batchPasswordHash"));
+        when(googlePushNotificationService.requestPushNotification("batchAndroidToken")).thenReturn("androidMessageId");
+        when(applePushNotificationService.requestVoipPushNotification(eq(ApplePushServer.PRODUCTION), any(ApplePushNotificationRequestCaller.class), eq("batchAppleToken"))).thenReturn("appleMessageId");
+
+        assertEquals(List.of(
+                PushNotificationResult.success(android, "androidMessageId"),
+                PushNotificationResult.success(apple, "appleMessageId"),
+                PushNotificationResult.failure(unsupported, "no supported device"),
+                PushNotificationResult.failure(unknown, "no supported device")),
+                pushNotificationService.sendPushNotificationsAsync(caller, List.of(android, apple, unsupported, unknown, android)).get());
+
+        verify(applePushNotificationService).requestVoipPushNotification(
+                eq(ApplePushServer.PRODUCTION),
+                argThat(arg -> AesUtil.decrypt(arg.encryptedSimlarId(), arg.initializationVector(), "batchPasswordHash").equals(caller.get())),
+                eq("batchAppleToken"));
+    }
+
+    private void awaitDeleted(final String simlarId) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 5000;
+        while (pushNotificationsRepository.findBySimlarId(simlarId) != null && System.currentTimeMillis() < end) {
+            //noinspection BusyWait
+            Thread.sleep(10);
+        }
+        assertNull(pushNotificationsRepository.findBySimlarId(simlarId));
+    }
+
+    @Test
+    public void testRequestGooglePushNotificationUnregistered() throws InterruptedException {
+        pushNotificationsRepository.save(new PushNotification("*12354*", DeviceType.ANDROID, "unregisteredToken"));
+
+        when(googlePushNotificationService.requestPushNotification("unregisteredToken")).thenThrow(HttpClientErrorException.create(
+                HttpStatus.NOT_FOUND, "Not Found", HttpHeaders.EMPTY,
+                "{\"error\":{\"code\":404,\"status\":\"NOT_FOUND\",\"details\":[{\"errorCode\":\"UNREGISTERED\"}]}}".getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.UTF_8));
+
+        assertThrows(HttpClientErrorException.class, () -> pushNotificationService.sendPushNotification(SimlarId.create("*04322*"), SimlarId.create("*12354*")));
+        awaitDeleted("*12354*");
+    }
+
+    @Test
+    public void testRequestApplePushNotificationUnregistered() throws InterruptedException {
+        final SimlarId callee = SimlarId.create("*12355*");
+        assertNotNull(callee);
+        pushNotificationsRepository.save(new PushNotification(callee.get(), DeviceType.IOS_VOIP, "goneToken"));
+
+        when(subscriberService.getHa1(callee)).thenReturn("gonePasswordHash");
+        when(applePushNotificationService.requestVoipPushNotification(eq(ApplePushServer.PRODUCTION), any(ApplePushNotificationRequestCaller.class), eq("goneToken"))).thenThrow(HttpClientErrorException.create(
+                HttpStatus.GONE, "Gone", HttpHeaders.EMPTY,
+                "{\"reason\":\"Unregistered\",\"timestamp\":1600000000000}".getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.UTF_8));
+
+        final ExecutionException exception = assertThrows(ExecutionException.class, () ->
+                pushNotificationService.sendPushNotificationAsync(SimlarId.create("*14322*"), callee).get());
+        assertTrue(exception.getCause() instanceof HttpClientErrorException);
+        awaitDeleted(callee.get());
+    }
+
+    @Test
+    public void testRequestGooglePushNotificationInvalidArgumentNotPruned() throws InterruptedException {
+        pushNotificationsRepository.save(new PushNotification("*12356*", DeviceType.ANDROID, "invalidToken"));
+
+        when(googlePushNotificationService.requestPushNotification("invalidToken")).thenThrow(HttpClientErrorException.create(
+                HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY,
+                "{\"error\":{\"code\":400,\"status\":\"INVALID_ARGUMENT\"}}".getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.UTF_8));
+
+        assertThrows(HttpClientErrorException.class, () -> pushNotificationService.sendPushNotification(SimlarId.create("*24322*"), SimlarId.create("*12356*")));
+        Thread.sleep(100);
+        assertNotNull(pushNotificationsRepository.findBySimlarId("*12356*"));
+    }
 }
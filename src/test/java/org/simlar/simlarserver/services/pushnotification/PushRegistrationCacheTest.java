@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.simlar.simlarserver.data.DeviceType;
+import org.simlar.simlarserver.utils.SimlarId;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class PushRegistrationCacheTest {
+    private static final SimlarId SIMLAR_ID_1 = SimlarId.create("*0001*");
+    private static final SimlarId SIMLAR_ID_2 = SimlarId.create("*0002*");
+    private static final SimlarId SIMLAR_ID_3 = SimlarId.create("*0003*");
+    private static final PushRegistration REGISTRATION = new PushRegistration(DeviceType.IOS_VOIP, "pushId");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PushRegistrationCache createCache(final int maxSize, final Duration timeToLive) {
+        return new PushRegistrationCache(new PushRegistrationCacheSettings(true, maxSize, timeToLive), meterRegistry);
+    }
+
+    private double count(final String result) {
+        return meterRegistry.counter("simlar.push.registration.cache", "result", result).count();
+    }
+
+    @Test
+    public void testGetAndInvalidate() {
+        final PushRegistrationCache cache = createCache(10, Duration.ofMinutes(1));
+
+        assertNull(cache.get(SIMLAR_ID_1));
+        cache.put(SIMLAR_ID_1, REGISTRATION, cache.generation());
+        assertEquals(REGISTRATION, cache.get(SIMLAR_ID_1));
+
+        cache.invalidate(SIMLAR_ID_1);
+        assertNull(cache.get(SIMLAR_ID_1));
+        assertEquals(1, count("hit"), 0.0);
+        assertEquals(2, count("miss"), 0.0);
+    }
+
+    @Test
+    public void testNoPutAfterInvalidationDuringLoad() {
+        final PushRegistrationCache cache = createCache(10, Duration.ofMinutes(1));
+
+        final long generation = cache.generation();
+        cache.invalidate(SIMLAR_ID_2);
+        cache.put(SIMLAR_ID_1, REGISTRATION, generation);
+        assertNull(cache.get(SIMLAR_ID_1));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        final PushRegistrationCache cache = createCache(2, Duration.ofMinutes(1));
+
+        cache.put(SIMLAR_ID_1, REGISTRATION, cache.generation());
+        cache.put(SIMLAR_ID_2, REGISTRATION, cache.generation());
+        assertEquals(REGISTRATION, cache.get(SIMLAR_ID_1));
+        cache.put(SIMLAR_ID_3, REGISTRATION, cache.generation());
+
+        assertEquals(2, cache.size());
+        assertEquals(REGISTRATION, cache.get(SIMLAR_ID_1));
+        assertNull(cache.get(SIMLAR_ID_2));
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        final PushRegistrationCache cache = createCache(10, Duration.ofMillis(10));
+
+        cache.put(SIMLAR_ID_1, REGISTRATION, cache.generation());
+        Thread.sleep(20);
+        assertNull(cache.get(SIMLAR_ID_1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        final PushRegistrationCache cache = new PushRegistrationCache(new PushRegistrationCacheSettings(false, 10, Duration.ofMinutes(1)), meterRegistry);
+
+        cache.put(SIMLAR_ID_1, REGISTRATION, cache.generation());
+        assertNull(cache.get(SIMLAR_ID_1));
+        assertEquals(0, count("miss"), 0.0);
+    }
+}
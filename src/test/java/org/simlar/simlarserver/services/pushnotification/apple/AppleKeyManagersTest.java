@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification.apple;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManager;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public final class AppleKeyManagersTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private volatile boolean failing;
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("voip", ".p12");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private KeyManager[] load() {
+        loads.incrementAndGet();
+        if (failing) {
+            throw new AppleKeyStoreException("failing");
+        }
+        return new KeyManager[0];
+    }
+
+    private AppleKeyManagers createKeyManagers(final Duration checkInterval) {
+        return new AppleKeyManagers(file.toString(), checkInterval, this::load, meterRegistry);
+    }
+
+    private void modify(final long seconds) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(seconds)));
+    }
+
+    private double countReloads(final String result) {
+        return meterRegistry.get("simlar.push.apple.certificate.reloads").tag("result", result).counter().count();
+    }
+
+    @Test
+    public void testCached() {
+        final AppleKeyManagers keyManagers = createKeyManagers(Duration.ZERO);
+        final KeyManager[] loaded = keyManagers.get();
+
+        assertSame(loaded, keyManagers.get());
+        assertSame(loaded, keyManagers.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testReloadOnChange() throws IOException {
+        final AppleKeyManagers keyManagers = createKeyManagers(Duration.ZERO);
+        final KeyManager[] loaded = keyManagers.get();
+
+        modify(10);
+        final KeyManager[] reloaded = keyManagers.get();
+        assertNotSame(loaded, reloaded);
+        assertSame(reloaded, keyManagers.get());
+        assertEquals(2, loads.get());
+        assertEquals(1, countReloads("success"), 0.0);
+    }
+
+    @Test
+    public void testCheckInterval() throws IOException {
+        final AppleKeyManagers keyManagers = createKeyManagers(Duration.ofHours(1));
+        final KeyManager[] loaded = keyManagers.get();
+
+        modify(10);
+        assertSame(loaded, keyManagers.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testKeepPreviousOnFailedReload() throws IOException {
+        final AppleKeyManagers keyManagers = createKeyManagers(Duration.ZERO);
+        final KeyManager[] loaded = keyManagers.get();
+
+        failing = true;
+        modify(10);
+        assertSame(loaded, keyManagers.get());
+        assertSame(loaded, keyManagers.get());
+        assertEquals(2, loads.get());
+        assertEquals(1, countReloads("failure"), 0.0);
+
+        failing = false;
+        modify(20);
+        assertNotSame(loaded, keyManagers.get());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testInitialFailure() {
+        failing = true;
+        final AppleKeyManagers keyManagers = createKeyManagers(Duration.ZERO);
+        assertThrows(AppleKeyStoreException.class, keyManagers::get);
+        assertThrows(AppleKeyStoreException.class, keyManagers::get);
+        assertEquals(2, loads.get());
+    }
+}
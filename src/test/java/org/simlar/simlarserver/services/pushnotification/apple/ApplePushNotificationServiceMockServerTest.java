@@ -22,6 +22,7 @@
 package org.simlar.simlarserver.services.pushnotification.apple;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -30,10 +31,12 @@ import org.mockserver.integration.ClientAndServer;
 import org.mockserver.model.HttpResponse;
 import org.mockserver.model.JsonBody;
 import org.simlar.simlarserver.services.pushnotification.apple.json.ApplePushNotificationRequestCaller;
+import org.simlar.simlarserver.utils.certificatepinning.HttpClientRegistry;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 
+import java.time.Duration;
 import java.time.Instant;
 
 import static org.junit.Assert.assertEquals;
@@ -56,7 +59,9 @@ public final class ApplePushNotificationServiceMockServerTest {
                 .sslProtocol("TLSv1.3")
                 .voipCertificatePath("src/test/resources/self-signed.p12")
                 .voipCertificatePassword("s3cr3t")
-                .build());
+                .build(),
+                new HttpClientRegistry(1, Duration.ofSeconds(10), Duration.ofSeconds(10)),
+                new SimpleMeterRegistry());
 
         mockServer = startClientAndServer();
     }
@@ -21,6 +21,7 @@
 
 package org.simlar.simlarserver.services.pushnotification.apple;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,6 +29,7 @@ import org.junit.runner.RunWith;
 import org.simlar.simlarserver.SimlarServer;
 import org.simlar.simlarserver.services.pushnotification.apple.json.ApplePushNotificationRequestCaller;
 import org.simlar.simlarserver.data.ApplePushServer;
+import org.simlar.simlarserver.utils.certificatepinning.HttpClientRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.client.RestTemplateBuilder;
@@ -56,6 +58,12 @@ public final class ApplePushNotificationServiceTest {
     @Autowired
     private ApplePushNotificationService applePushNotificationService;
 
+    @Autowired
+    private HttpClientRegistry httpClientRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Before
     public void verifyConfiguration() {
         assumeTrue("This test needs a configuration with certificates and passwords", pushNotificationSettings.isConfigured());
@@ -101,7 +109,7 @@ public final class ApplePushNotificationServiceTest {
                     .build();
 
             final ApplePushNotificationRequestCaller caller = new ApplePushNotificationRequestCaller("initializationVector", "encryptedSimlarId");
-            new ApplePushNotificationService(settings).requestVoipPushNotification(ApplePushServer.SANDBOX, caller, "invalidDeviceToken");
+            new ApplePushNotificationService(settings, httpClientRegistry, meterRegistry).requestVoipPushNotification(ApplePushServer.SANDBOX, caller, "invalidDeviceToken");
             fail("expected exception not thrown: " + ResourceAccessException.class.getSimpleName());
         } catch (final ResourceAccessException e) {
             assertEquals("SSLHandshakeException", e.getCause().getClass().getSimpleName());
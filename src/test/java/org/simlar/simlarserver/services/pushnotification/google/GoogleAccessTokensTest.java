@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.pushnotification.google;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class GoogleAccessTokensTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @SuppressWarnings("deprecation")
+    private static final class TestCredentials extends GoogleCredentials {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicInteger refreshes = new AtomicInteger();
+        private final Duration lifetime;
+        private volatile boolean failing;
+
+        TestCredentials(final Duration lifetime) {
+            this.lifetime = lifetime;
+        }
+
+        @Override
+        public AccessToken refreshAccessToken() throws IOException {
+            if (failing) {
+                throw new IOException("refresh failed");
+            }
+
+            return new AccessToken("token" + refreshes.incrementAndGet(), new Date(System.currentTimeMillis() + lifetime.toMillis()));
+        }
+    }
+
+    private long count(final String result) {
+        return meterRegistry.get("simlar.push.google.token.refreshes").tag("result", result).timer().count();
+    }
+
+    @Test
+    public void testGetRefreshesOnlyIfExpired() {
+        final TestCredentials credentials = new TestCredentials(Duration.ofHours(1));
+        final GoogleAccessTokens accessTokens = new GoogleAccessTokens(credentials, meterRegistry);
+
+        assertEquals("token1", accessTokens.get());
+        assertEquals("token1", accessTokens.get());
+        assertEquals(1, count("success"));
+    }
+
+    @Test
+    public void testRefreshIfExpiring() {
+        final TestCredentials credentials = new TestCredentials(Duration.ofMinutes(5));
+        final GoogleAccessTokens accessTokens = new GoogleAccessTokens(credentials, meterRegistry);
+
+        assertEquals("token1", accessTokens.get());
+        accessTokens.refreshIfExpiring(Duration.ofMinutes(1));
+        assertEquals("token1", accessTokens.get());
+        accessTokens.refreshIfExpiring(Duration.ofMinutes(10));
+        assertEquals("token2", accessTokens.get());
+        assertEquals(2, count("success"));
+    }
+
+    @Test
+    public void testRefreshFailureKeepsValidToken() {
+        final TestCredentials credentials = new TestCredentials(Duration.ofMinutes(5));
+        final GoogleAccessTokens accessTokens = new GoogleAccessTokens(credentials, meterRegistry);
+
+        assertEquals("token1", accessTokens.get());
+        credentials.failing = true;
+        accessTokens.refreshIfExpiring(Duration.ofMinutes(10));
+        assertEquals("token1", accessTokens.get());
+        assertEquals(1, count("failure"));
+    }
+
+    @Test
+    public void testExpiredTokenRefreshFailure() {
+        final TestCredentials credentials = new TestCredentials(Duration.ZERO);
+        credentials.failing = true;
+        final GoogleAccessTokens accessTokens = new GoogleAccessTokens(credentials, meterRegistry);
+
+        assertNull(accessTokens.get());
+        assertEquals(1, count("failure"));
+    }
+}
@@ -28,6 +28,7 @@ import org.junit.Test;
 import org.mockserver.client.MockServerClient;
 import org.mockserver.integration.ClientAndServer;
 import org.mockserver.model.HttpResponse;
+import org.simlar.simlarserver.utils.certificatepinning.CertificatePinningUtil;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.client.HttpClientErrorException;
 
@@ -67,8 +68,8 @@ public final class GooglePushNotificationMockServerTest {
 
     private String requestPushNotification(final String deviceToken) {
         return GooglePushNotificationService.requestPushNotification(
+                CertificatePinningUtil.createRestTemplate(null),
                 "http://localhost:" + mockServer.getLocalPort(),
-                null,
                 "simlar-org",
                 "someBearer",
                 deviceToken);
@@ -21,14 +21,17 @@
 
 package org.simlar.simlarserver.services.pushnotification.google;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.simlar.simlarserver.SimlarServer;
+import org.simlar.simlarserver.utils.certificatepinning.HttpClientRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.ResourceAccessException;
@@ -50,6 +53,15 @@ public final class GooglePushNotificationServiceTest {
     @Autowired
     private GooglePushNotificationService pushNotificationService;
 
+    @Autowired
+    private HttpClientRegistry httpClientRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
     @Before
     public void verifyConfiguration() {
         assumeTrue("This test needs a valid google credential file", pushNotificationSettings.isConfigured());
@@ -70,7 +82,7 @@ public final class GooglePushNotificationServiceTest {
                     .firebaseCertificatePinning(Collections.singletonList("sha256/_________WRONG_CERTIFICATE_PINNING_________="))
                     .build();
 
-            new GooglePushNotificationService(settings).requestPushNotification("invalidDeviceToken");
+            new GooglePushNotificationService(settings, httpClientRegistry, meterRegistry, taskScheduler).requestPushNotification("invalidDeviceToken");
             fail("expected exception not thrown: " + ResourceAccessException.class.getSimpleName());
         } catch (final ResourceAccessException e) {
             assertEquals("SSLHandshakeException", e.getCause().getClass().getSimpleName());
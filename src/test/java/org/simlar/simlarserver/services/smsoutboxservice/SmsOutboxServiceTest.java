@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsoutboxservice;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.simlar.simlarserver.SimlarServer;
+import org.simlar.simlarserver.data.SmsOutboxStatus;
+import org.simlar.simlarserver.data.TwilioRequestType;
+import org.simlar.simlarserver.database.models.SmsOutboxEntry;
+import org.simlar.simlarserver.database.repositories.SmsOutboxRepository;
+import org.simlar.simlarserver.services.accountservice.AccountService;
+import org.simlar.simlarserver.services.smsservice.SmsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DirtiesContext
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = SimlarServer.class, properties = {
+        "sms.outbox.enabled = true",
+        "sms.outbox.workers = 1",
+        "sms.outbox.maxAttempts = 2",
+        "sms.outbox.retryDelay = 0s",
+        "sms.outbox.pollInterval = 1h"
+})
+public final class SmsOutboxServiceTest {
+    private static final long TIMEOUT = 5000;
+
+    @Autowired
+    private SmsOutboxService smsOutboxService;
+
+    @Autowired
+    private SmsOutboxRepository smsOutboxRepository;
+
+    @Autowired
+    private SmsService smsService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @After
+    public void cleanup() {
+        reset(smsService);
+    }
+
+    private SmsOutboxEntry findByIdempotencyKey(final String idempotencyKey) {
+        return StreamSupport.stream(smsOutboxRepository.findAll().spliterator(), false)
+                .filter(entry -> idempotencyKey.equals(entry.getIdempotencyKey()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private void awaitEntry(final String idempotencyKey, final SmsOutboxStatus status, final int attempts) throws InterruptedException {
+        final long end = System.currentTimeMillis() + TIMEOUT;
+        SmsOutboxEntry entry = findByIdempotencyKey(idempotencyKey);
+        while ((entry.getStatus() != status || entry.getAttempts() != attempts) && System.currentTimeMillis() < end) {
+            //noinspection BusyWait
+            Thread.sleep(10);
+            entry = findByIdempotencyKey(idempotencyKey);
+        }
+        assertEquals(status, entry.getStatus());
+        assertEquals(attempts, entry.getAttempts());
+    }
+
+    @Test
+    public void testSendSms() throws InterruptedException {
+        when(smsService.sendSms("+4915100000001", "sms")).thenReturn(Boolean.TRUE);
+        final boolean[] saved = { false };
+
+        assertTrue(smsOutboxService.enqueue(TwilioRequestType.SMS, "+4915100000001", "sms", "test:sms", () -> saved[0] = true));
+        assertTrue(saved[0]);
+
+        verify(smsService, timeout(TIMEOUT)).sendSms("+4915100000001", "sms");
+        awaitEntry("test:sms", SmsOutboxStatus.SENT, 1);
+    }
+
+    @Test
+    public void testCall() throws InterruptedException {
+        when(smsService.call("+4915100000002", "call")).thenReturn(Boolean.TRUE);
+
+        assertTrue(smsOutboxService.enqueue(TwilioRequestType.CALL, "+4915100000002", "call", "test:call", () -> {}));
+
+        verify(smsService, timeout(TIMEOUT)).call("+4915100000002", "call");
+        awaitEntry("test:call", SmsOutboxStatus.SENT, 1);
+    }
+
+    @Test
+    public void testIdempotencyKey() throws InterruptedException {
+        when(smsService.sendSms("+4915100000003", "sms")).thenReturn(Boolean.FALSE, Boolean.TRUE);
+
+        assertTrue(smsOutboxService.enqueue(TwilioRequestType.SMS, "+4915100000003", "sms", "test:idempotency", () -> {}));
+        awaitEntry("test:idempotency", SmsOutboxStatus.PENDING, 1);
+        final boolean[] saved = { false };
+        assertTrue(smsOutboxService.enqueue(TwilioRequestType.SMS, "+4915100000003", "sms", "test:idempotency", () -> saved[0] = true));
+        assertTrue(saved[0]);
+
+        smsOutboxService.poll();
+        awaitEntry("test:idempotency", SmsOutboxStatus.SENT, 2);
+        verify(smsService, times(2)).sendSms("+4915100000003", "sms");
+        final List<SmsOutboxEntry> entries = StreamSupport.stream(smsOutboxRepository.findAll().spliterator(), false)
+                .filter(entry -> "test:idempotency".equals(entry.getIdempotencyKey()))
+                .toList();
+        assertEquals(1, entries.size());
+    }
+
+    @Test
+    public void testCompletedIdempotencyKeyFallsBack() throws InterruptedException {
+        when(smsService.sendSms("+4915100000007", "sms")).thenReturn(Boolean.TRUE);
+
+        assertTrue(smsOutboxService.enqueue(TwilioRequestType.SMS, "+4915100000007", "sms", "test:completed", () -> {}));
+        awaitEntry("test:completed", SmsOutboxStatus.SENT, 1);
+
+        assertFalse(smsOutboxService.enqueue(TwilioRequestType.SMS, "+4915100000007", "sms", "test:completed", () -> {}));
+    }
+
+    @Test
+    public void testRetry() throws InterruptedException {
+        when(smsService.sendSms("+4915100000004", "sms")).thenReturn(Boolean.FALSE, Boolean.TRUE);
+
+        assertTrue(smsOutboxService.enqueue(TwilioRequestType.SMS, "+4915100000004", "sms", "test:retry", () -> {}));
+        awaitEntry("test:retry", SmsOutboxStatus.PENDING, 1);
+
+        smsOutboxService.poll();
+        awaitEntry("test:retry", SmsOutboxStatus.SENT, 2);
+        verify(smsService, times(2)).sendSms("+4915100000004", "sms");
+    }
+
+    @Test
+    public void testGiveUp() throws InterruptedException {
+        when(smsService.sendSms("+4915100000005", "sms")).thenReturn(Boolean.FALSE);
+
+        assertTrue(smsOutboxService.enqueue(TwilioRequestType.SMS, "+4915100000005", "sms", "test:give-up", () -> {}));
+        awaitEntry("test:give-up", SmsOutboxStatus.PENDING, 1);
+        smsOutboxService.poll();
+        awaitEntry("test:give-up", SmsOutboxStatus.FAILED, 2);
+
+        smsOutboxService.poll();
+        verify(smsService, times(2)).sendSms("+4915100000005", "sms");
+    }
+
+    @Test
+    public void testFallbackOnFailingChanges() {
+        assertFalse(smsOutboxService.enqueue(TwilioRequestType.SMS, "+4915100000006", "sms", "test:fallback", () -> {
+            throw new DataRetrievalFailureException("test");
+        }));
+        assertTrue(StreamSupport.stream(smsOutboxRepository.findAll().spliterator(), false)
+                .noneMatch(entry -> "test:fallback".equals(entry.getIdempotencyKey())));
+    }
+
+    @Test
+    public void testRepeatedAccountRequestQueuesSmsAgain() {
+        accountService.createAccountRequest("+15005550012", "", "192.168.1.12");
+        accountService.createAccountRequest("+15005550012", "", "192.168.1.12");
+
+        assertEquals(2, StreamSupport.stream(smsOutboxRepository.findAll().spliterator(), false)
+                .filter(entry -> entry.getIdempotencyKey().startsWith("request:CREATE:*15005550012*:"))
+                .count());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsproviderlogservice;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.simlar.simlarserver.SimlarServer;
+import org.simlar.simlarserver.data.TwilioRequestType;
+import org.simlar.simlarserver.database.models.SchedulerLock;
+import org.simlar.simlarserver.database.models.SmsProviderLog;
+import org.simlar.simlarserver.database.repositories.SchedulerLockRepository;
+import org.simlar.simlarserver.database.repositories.SmsProviderLogRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = SimlarServer.class, properties = {
+        "sms.provider.log.retention.maxAge = 30d",
+        "sms.provider.log.retention.batchSize = 2",
+        "sms.provider.log.retention.batchPause = 1ms",
+        "sms.provider.log.retention.exportDirectory = ${java.io.tmpdir}"
+})
+public final class SmsProviderLogRetentionTest {
+    @Autowired
+    private SmsProviderLogRetention smsProviderLogRetention;
+
+    @Autowired
+    private SmsProviderLogRepository smsProviderLogRepository;
+
+    @Autowired
+    private SchedulerLockRepository schedulerLockRepository;
+
+    private void save(final String sessionId, final Instant timestamp) {
+        final SmsProviderLog smsProviderLog = new SmsProviderLog(TwilioRequestType.SMS, "+15005550201", sessionId, "delivered", "retention");
+        smsProviderLog.setTimestamp(timestamp);
+        smsProviderLogRepository.save(smsProviderLog);
+    }
+
+    @Test
+    public void testPurgeAndExport() throws IOException {
+        final Instant now = Instant.now();
+        save("retentionSid1", now.minus(Duration.ofDays(40)));
+        save("retentionSid2", now.minus(Duration.ofDays(35)));
+        save("retentionSid3", now.minus(Duration.ofDays(31)));
+        save("retentionSid4", now.minus(Duration.ofDays(29)));
+
+        final Path file = Path.of(System.getProperty("java.io.tmpdir"), "simlar_sms_provider_log-" + DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC).format(now) + ".ndjson.gz");
+        Files.deleteIfExists(file);
+        try {
+            assertTrue(smsProviderLogRetention.purge(now) >= 3);
+
+            assertNull(smsProviderLogRepository.findBySessionId("retentionSid1"));
+            assertNull(smsProviderLogRepository.findBySessionId("retentionSid2"));
+            assertNull(smsProviderLogRepository.findBySessionId("retentionSid3"));
+            assertNotNull(smsProviderLogRepository.findBySessionId("retentionSid4"));
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+                final List<String> lines = reader.lines().filter(line -> line.contains("retentionSid")).toList();
+                assertEquals(3, lines.size());
+                assertTrue(lines.getFirst().contains("\"sessionId\":\"retentionSid1\""));
+                assertTrue(lines.getFirst().contains("\"telephoneNumber\":\"+15005550201\""));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testNoExportFileWithoutExpiredEntries() throws IOException {
+        final Instant now = Instant.now();
+        final Path file = Path.of(System.getProperty("java.io.tmpdir"), "simlar_sms_provider_log-" + DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC).format(now) + ".ndjson.gz");
+        Files.deleteIfExists(file);
+
+        assertEquals(0, smsProviderLogRetention.purge(now));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testPurgeSkippedWhileAnotherNodeHoldsTheLock() {
+        final Instant now = Instant.now();
+        schedulerLockRepository.save(new SchedulerLock("sms_provider_log_retention", now.plus(Duration.ofMinutes(5)), "other node"));
+        try {
+            save("retentionSid5", now.minus(Duration.ofDays(31)));
+            assertEquals(0, smsProviderLogRetention.purge(now));
+            assertNotNull(smsProviderLogRepository.findBySessionId("retentionSid5"));
+        } finally {
+            schedulerLockRepository.save(new SchedulerLock("sms_provider_log_retention", now, "other node"));
+            smsProviderLogRepository.delete(smsProviderLogRepository.findBySessionId("retentionSid5"));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class RoutingSmsServiceTest {
+    private static final String GERMAN_NUMBER = "+4915112345678";
+    private static final String US_NUMBER = "+15005550006";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StubSmsProvider first = new StubSmsProvider("first");
+    private final StubSmsProvider second = new StubSmsProvider("second");
+
+    @SuppressWarnings("SameParameterValue")
+    private RoutingSmsService createRoutingSmsService(final boolean enabled, final double minSuccessRate, final Duration sampleTimeToLive, final int maxConcurrentRequestsPerProvider) {
+        final SmsRoutingSettings settings = new SmsRoutingSettings(enabled, List.of("first", "second"),
+                List.of(new SmsRoutingSettings.Route("+49", List.of("second", "first")), new SmsRoutingSettings.Route("+491", List.of("first"))),
+                null, 10, 3, minSuccessRate, sampleTimeToLive, maxConcurrentRequestsPerProvider, Duration.ofMillis(1));
+        return new RoutingSmsService(settings, List.of(first, second), meterRegistry);
+    }
+
+    private RoutingSmsService createRoutingSmsService(final boolean enabled) {
+        return createRoutingSmsService(enabled, 0.5, Duration.ofMinutes(10), 0);
+    }
+
+    @Test
+    public void testLongestPrefix() {
+        final RoutingSmsService routingSmsService = createRoutingSmsService(true);
+
+        assertEquals(List.of("first", "second"), routingSmsService.findProviders(US_NUMBER));
+        assertEquals(List.of("second", "first"), routingSmsService.findProviders("+4930123456"));
+        assertEquals(List.of("first"), routingSmsService.findProviders(GERMAN_NUMBER));
+    }
+
+    @Test
+    public void testDisabledUsesFirstProviderOnly() {
+        final RoutingSmsService routingSmsService = createRoutingSmsService(false);
+        first.setResult(SmsProviderResult.FAILED);
+
+        assertEquals(List.of("first"), routingSmsService.findProviders(US_NUMBER));
+        assertFalse(routingSmsService.sendSms(US_NUMBER, "text"));
+        assertEquals(1, first.getTelephoneNumbers().size());
+        assertTrue(second.getTelephoneNumbers().isEmpty());
+    }
+
+    @Test
+    public void testFailover() {
+        final RoutingSmsService routingSmsService = createRoutingSmsService(true);
+        first.setResult(SmsProviderResult.FAILED);
+
+        assertTrue(routingSmsService.sendSms(US_NUMBER, "text"));
+        assertTrue(routingSmsService.call(US_NUMBER, "text"));
+        assertEquals(List.of(US_NUMBER, US_NUMBER), first.getTelephoneNumbers());
+        assertEquals(List.of(US_NUMBER, US_NUMBER), second.getTelephoneNumbers());
+        assertEquals(2, meterRegistry.counter("simlar.sms.failovers").count(), 0.0);
+        assertEquals(2, meterRegistry.timer("simlar.sms.requests", "provider", "first", "result", "failure").count());
+    }
+
+    @Test
+    public void testAllProvidersFailing() {
+        final RoutingSmsService routingSmsService = createRoutingSmsService(true);
+        first.setResult(SmsProviderResult.FAILED);
+        second.setResult(SmsProviderResult.FAILED);
+
+        assertFalse(routingSmsService.sendSms(US_NUMBER, "text"));
+        assertFalse(routingSmsService.sendSms(GERMAN_NUMBER, "text"));
+        assertEquals(1, second.getTelephoneNumbers().size());
+    }
+
+    @Test
+    public void testDegradedProviderIsTriedLast() {
+        final RoutingSmsService routingSmsService = createRoutingSmsService(true);
+        first.setResult(SmsProviderResult.FAILED);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(routingSmsService.sendSms(US_NUMBER, "text"));
+        }
+
+        assertEquals(List.of("second", "first"), routingSmsService.findProviders(US_NUMBER));
+        assertEquals(List.of("second", "first"), routingSmsService.findProviders("+4930123456"));
+
+        first.setResult(SmsProviderResult.SENT);
+        assertTrue(routingSmsService.sendSms(US_NUMBER, "text"));
+        assertEquals(3, first.getTelephoneNumbers().size());
+        assertEquals(4, second.getTelephoneNumbers().size());
+    }
+
+    @Test
+    public void testDegradedProviderRecovers() throws InterruptedException {
+        final RoutingSmsService routingSmsService = createRoutingSmsService(true, 0.5, Duration.ofMillis(100), 0);
+        first.setResult(SmsProviderResult.FAILED);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(routingSmsService.sendSms(US_NUMBER, "text"));
+        }
+        assertEquals(List.of("second", "first"), routingSmsService.findProviders(US_NUMBER));
+
+        Thread.sleep(150);
+        assertEquals(List.of("first", "second"), routingSmsService.findProviders(US_NUMBER));
+    }
+
+    @Test
+    public void testFasterProviderIsPreferred() {
+        final RoutingSmsService routingSmsService = createRoutingSmsService(true, 0.0, Duration.ofMinutes(10), 0);
+        first.setResult(SmsProviderResult.FAILED);
+        first.setLatency(Duration.ofMillis(20));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(routingSmsService.sendSms(US_NUMBER, "text"));
+        }
+
+        assertEquals(List.of("second", "first"), routingSmsService.findProviders(US_NUMBER));
+    }
+
+    @Test
+    public void testProviderWithoutSamplesKeepsItsPlace() {
+        final RoutingSmsService routingSmsService = createRoutingSmsService(true);
+        first.setLatency(Duration.ofMillis(20));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(routingSmsService.sendSms(US_NUMBER, "text"));
+        }
+
+        assertEquals(List.of("first", "second"), routingSmsService.findProviders(US_NUMBER));
+        assertTrue(second.getTelephoneNumbers().isEmpty());
+    }
+
+    @Test
+    public void testBusyProviderIsSkipped() throws InterruptedException {
+        final RoutingSmsService routingSmsService = createRoutingSmsService(true, 0.5, Duration.ofMinutes(10), 1);
+        first.setLatency(Duration.ofMillis(500));
+        final Thread thread = new Thread(() -> routingSmsService.sendSms(US_NUMBER, "text"));
+        thread.start();
+        while (first.getTelephoneNumbers().isEmpty()) {
+            //noinspection BusyWait
+            Thread.sleep(1);
+        }
+
+        assertTrue(routingSmsService.sendSms(US_NUMBER, "text"));
+        assertEquals(List.of(US_NUMBER), second.getTelephoneNumbers());
+        thread.join();
+        assertEquals(1, first.getTelephoneNumbers().size());
+    }
+
+    @Test
+    public void testRejectedRequestIsNeitherFailedOverNorCounted() {
+        final RoutingSmsService routingSmsService = createRoutingSmsService(true);
+        first.setResult(SmsProviderResult.REJECTED);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(routingSmsService.sendSms(US_NUMBER, "text"));
+        }
+
+        assertTrue(second.getTelephoneNumbers().isEmpty());
+        assertEquals(List.of("first", "second"), routingSmsService.findProviders(US_NUMBER));
+        assertEquals(0, meterRegistry.counter("simlar.sms.failovers").count(), 0.0);
+        assertEquals(3, meterRegistry.timer("simlar.sms.requests", "provider", "first", "result", "rejected").count());
+    }
+}
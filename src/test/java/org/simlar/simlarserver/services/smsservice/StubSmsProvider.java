@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.smsservice;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Local provider for tests, answering after a configurable latency with a configurable result.
+ */
+public final class StubSmsProvider implements SmsProvider {
+    private final String name;
+    private final List<String> telephoneNumbers = new CopyOnWriteArrayList<>();
+    private volatile SmsProviderResult result = SmsProviderResult.SENT;
+    private volatile Duration latency = Duration.ZERO;
+
+    public StubSmsProvider(final String name) {
+        this.name = name;
+    }
+
+    public void setResult(final SmsProviderResult result) {
+        this.result = result;
+    }
+
+    public void setLatency(final Duration latency) {
+        this.latency = latency;
+    }
+
+    public List<String> getTelephoneNumbers() {
+        return telephoneNumbers;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    private SmsProviderResult answer(final String telephoneNumber) {
+        telephoneNumbers.add(telephoneNumber);
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return SmsProviderResult.FAILED;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public SmsProviderResult sendSms(final String telephoneNumber, final String text) {
+        return answer(telephoneNumber);
+    }
+
+    @Override
+    public SmsProviderResult call(final String telephoneNumber, final String text) {
+        return answer(telephoneNumber);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.subscriberservice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class RegisteredSimlarIdsTest {
+    @Test
+    public void testEncode() {
+        assertEquals(11L, RegisteredSimlarIds.encode("*1*"));
+        assertEquals(10001L, RegisteredSimlarIds.encode("*0001*"));
+        assertEquals(1491234567890L, RegisteredSimlarIds.encode("*491234567890*"));
+        assertEquals(1999999999999999999L, RegisteredSimlarIds.encode("*999999999999999999*"));
+        assertEquals(-1L, RegisteredSimlarIds.encode("*1234567890123456789*"));
+        assertEquals(-1L, RegisteredSimlarIds.encode("**"));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, RegisteredSimlarIds.EMPTY.size());
+        assertFalse(RegisteredSimlarIds.EMPTY.contains("*0001*"));
+    }
+
+    @Test
+    public void testContains() {
+        final RegisteredSimlarIds registered = RegisteredSimlarIds.builder(0)
+                .add("*0003*")
+                .add("*0001*")
+                .add("*1*")
+                .add("*0001*")
+                .add("*1234567890123456789*")
+                .build();
+
+        assertEquals(4, registered.size());
+        assertTrue(registered.contains("*0001*"));
+        assertTrue(registered.contains("*0003*"));
+        assertTrue(registered.contains("*1*"));
+        assertTrue(registered.contains("*1234567890123456789*"));
+        assertFalse(registered.contains("*0002*"));
+        assertFalse(registered.contains("*01*"));
+        assertFalse(registered.contains("*3*"));
+        assertFalse(registered.contains("*1234567890123456788*"));
+    }
+
+    @Test
+    public void testContainsWithManyEntries() {
+        final RegisteredSimlarIds.Builder builder = RegisteredSimlarIds.builder(10);
+        for (int i = 100000; i > 0; i -= 2) {
+            builder.add(String.format("*%d*", i));
+        }
+        final RegisteredSimlarIds registered = builder.build();
+
+        assertEquals(50000, registered.size());
+        assertTrue(registered.contains("*2*"));
+        assertTrue(registered.contains("*100000*"));
+        assertFalse(registered.contains("*1*"));
+        assertFalse(registered.contains("*99999*"));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.subscriberservice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class SimlarIdBloomFilterTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateWithInvalidProbability() {
+        SimlarIdBloomFilter.create(100, 1.0);
+    }
+
+    @Test
+    public void testCreate() {
+        final SimlarIdBloomFilter filter = SimlarIdBloomFilter.create(1000000, 0.01);
+        assertEquals(9585059, filter.getBitCount());
+        assertEquals(7, filter.getHashCount());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertFalse(SimlarIdBloomFilter.create(0, 0.01).mightContain("*0001*"));
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+        final SimlarIdBloomFilter filter = SimlarIdBloomFilter.create(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add(String.format("*%d*", i));
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(String.format("*%d*", i)));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveProbability() {
+        final SimlarIdBloomFilter filter = SimlarIdBloomFilter.create(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add(String.format("*%d*", i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (filter.mightContain(String.format("*%d*", i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("falsePositives=" + falsePositives, falsePositives < 2000);
+    }
+}
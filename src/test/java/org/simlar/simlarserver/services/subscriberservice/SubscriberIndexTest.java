@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.subscriberservice;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.simlar.simlarserver.SimlarServer;
+import org.simlar.simlarserver.database.models.Subscriber;
+import org.simlar.simlarserver.database.repositories.SubscriberRepository;
+import org.simlar.simlarserver.services.SharedSettings;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@DirtiesContext
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = SimlarServer.class, properties = {
+        "subscriber.index.enabled = true",
+        "subscriber.index.batchSize = 2"
+})
+public final class SubscriberIndexTest {
+    @Autowired
+    private SubscriberIndex subscriberIndex;
+
+    @Autowired
+    private SubscriberService subscriberService;
+
+    @Autowired
+    private SubscriberRepository subscriberRepository;
+
+    @Autowired
+    private SharedSettings sharedSettings;
+
+    @Test
+    public void testLoadedAfterStartUp() {
+        assertTrue(subscriberIndex.isLoaded());
+    }
+
+    @Test
+    public void testSaveAndDelete() {
+        final SimlarId simlarId = SimlarId.create("*3001*");
+
+        assertFalse(subscriberIndex.isRegistered(simlarId));
+        subscriberService.save(simlarId, "somePassword");
+        assertTrue(subscriberIndex.isRegistered(simlarId));
+        assertEquals(List.of(simlarId), subscriberService.filterSimlarIdsRegistered(List.of(simlarId, SimlarId.create("*3002*"), simlarId)));
+
+        subscriberService.deleteBySimlarId(simlarId);
+        assertFalse(subscriberIndex.isRegistered(simlarId));
+        assertEquals(List.of(), subscriberService.filterSimlarIdsRegistered(List.of(simlarId)));
+    }
+
+    @Test
+    public void testReconcile() {
+        final SimlarId simlarId1 = SimlarId.create("*3003*");
+        final SimlarId simlarId2 = SimlarId.create("*3004*");
+        final SimlarId simlarId3 = SimlarId.create("*3005*");
+        final SimlarId simlarIdOtherDomain = SimlarId.create("*3006*");
+
+        subscriberRepository.save(new Subscriber(simlarId1.get(), sharedSettings.domain(), "password1"));
+        subscriberRepository.save(new Subscriber(simlarId2.get(), sharedSettings.domain(), "password2"));
+        subscriberRepository.save(new Subscriber(simlarId3.get(), sharedSettings.domain(), "password3"));
+        subscriberRepository.save(new Subscriber(simlarIdOtherDomain.get(), "other." + sharedSettings.domain(), "password4"));
+        assertFalse(subscriberIndex.isRegistered(simlarId1));
+
+        subscriberIndex.reconcile();
+        assertTrue(subscriberIndex.isRegistered(simlarId1));
+        assertTrue(subscriberIndex.isRegistered(simlarId2));
+        assertTrue(subscriberIndex.isRegistered(simlarId3));
+        assertFalse(subscriberIndex.isRegistered(simlarIdOtherDomain));
+
+        subscriberRepository.deleteByUsernameAndDomain(simlarId2.get(), sharedSettings.domain());
+        subscriberIndex.reconcile();
+        assertTrue(subscriberIndex.isRegistered(simlarId1));
+        assertFalse(subscriberIndex.isRegistered(simlarId2));
+        assertTrue(subscriberIndex.isRegistered(simlarId3));
+    }
+}
@@ -36,6 +36,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -121,6 +122,21 @@ public final class SubscriberServiceTest {
         assertEquals("234f6f5d04f73725a14c8f3f3a664e11", subscriberService.getHa1(simlarIdSaved));
     }
 
+    @Test
+    public void testGetHa1s() {
+        final SimlarId simlarIdSaved1 = SimlarId.create("*2006*");
+        final SimlarId simlarIdSaved2 = SimlarId.create("*2007*");
+        final SimlarId simlarIdNotSaved = SimlarId.create("*2008*");
+
+        assertTrue(subscriberService.getHa1s(List.of()).isEmpty());
+        subscriberService.save(simlarIdSaved1, "xxxxxx");
+        subscriberService.save(simlarIdSaved2, "as234f2dsd");
+        assertEquals(Map.of(
+                simlarIdSaved1, subscriberService.getHa1(simlarIdSaved1),
+                simlarIdSaved2, subscriberService.getHa1(simlarIdSaved2)),
+                subscriberService.getHa1s(List.of(simlarIdSaved1, simlarIdNotSaved, simlarIdSaved2, simlarIdSaved1)));
+    }
+
     @Test
     public void testFilterSimlarIdsRegistered() {
         final SimlarId simlarIdSaved = SimlarId.create("*2002*");
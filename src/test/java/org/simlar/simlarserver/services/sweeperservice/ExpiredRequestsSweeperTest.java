@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.sweeperservice;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.simlar.simlarserver.SimlarServer;
+import org.simlar.simlarserver.data.AccountRequestType;
+import org.simlar.simlarserver.database.models.AccountCreationRequestCount;
+import org.simlar.simlarserver.database.models.ContactsRequestCount;
+import org.simlar.simlarserver.database.models.SchedulerLock;
+import org.simlar.simlarserver.database.repositories.AccountCreationRequestCountRepository;
+import org.simlar.simlarserver.database.repositories.ContactsRequestCountRepository;
+import org.simlar.simlarserver.database.repositories.SchedulerLockRepository;
+import org.simlar.simlarserver.utils.SimlarId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = SimlarServer.class, properties = {
+        "expired.requests.sweeper.maxAge = 3d",
+        "expired.requests.sweeper.batchSize = 2",
+        "expired.requests.sweeper.batchPause = 1ms"
+})
+public final class ExpiredRequestsSweeperTest {
+    @Autowired
+    private ExpiredRequestsSweeper expiredRequestsSweeper;
+
+    @Autowired
+    private AccountCreationRequestCountRepository accountCreationRepository;
+
+    @Autowired
+    private ContactsRequestCountRepository contactsRequestCountRepository;
+
+    @Autowired
+    private SchedulerLockRepository schedulerLockRepository;
+
+    private void saveAccountRequest(final String simlarId, final Instant timestamp) {
+        accountCreationRepository.save(new AccountCreationRequestCount(simlarId, AccountRequestType.CREATE, "password", "123456", timestamp, "10.0.0.1"));
+    }
+
+    private void saveContactsRequestCount(final String simlarId, final Instant timestamp) {
+        contactsRequestCountRepository.save(new ContactsRequestCount(SimlarId.create(simlarId), timestamp, "hash", 10));
+    }
+
+    @Test
+    public void testSweep() {
+        final Instant now = Instant.now();
+        saveAccountRequest("*19001*", now.minus(Duration.ofDays(10)));
+        saveAccountRequest("*19002*", now.minus(Duration.ofDays(5)));
+        saveAccountRequest("*19003*", now.minus(Duration.ofDays(4)));
+        saveAccountRequest("*19004*", now.minus(Duration.ofDays(1)));
+        final AccountCreationRequestCount called = new AccountCreationRequestCount("*19005*", AccountRequestType.CREATE, "password", "123456", now.minus(Duration.ofDays(5)), "10.0.0.1");
+        called.setCallTimestamp(now.minus(Duration.ofDays(1)));
+        accountCreationRepository.save(called);
+        saveContactsRequestCount("*19001*", now.minus(Duration.ofDays(10)));
+        saveContactsRequestCount("*19002*", now.minus(Duration.ofDays(4)));
+        saveContactsRequestCount("*19003*", now.minus(Duration.ofDays(1)));
+
+        assertTrue(expiredRequestsSweeper.sweep(now) >= 5);
+
+        assertNull(accountCreationRepository.findBySimlarId("*19001*"));
+        assertNull(accountCreationRepository.findBySimlarId("*19002*"));
+        assertNull(accountCreationRepository.findBySimlarId("*19003*"));
+        assertNotNull(accountCreationRepository.findBySimlarId("*19004*"));
+        assertNotNull(accountCreationRepository.findBySimlarId("*19005*"));
+        assertNull(contactsRequestCountRepository.findBySimlarId("*19001*"));
+        assertNull(contactsRequestCountRepository.findBySimlarId("*19002*"));
+        assertNotNull(contactsRequestCountRepository.findBySimlarId("*19003*"));
+    }
+
+    @Test
+    public void testSweepSkippedWhileAnotherNodeHoldsTheLock() {
+        final Instant now = Instant.now();
+        saveContactsRequestCount("*19011*", now.minus(Duration.ofDays(10)));
+        expiredRequestsSweeper.sweep(now);
+        schedulerLockRepository.save(new SchedulerLock("expired_requests_sweeper", now.plus(Duration.ofMinutes(5)), "other node"));
+        try {
+            saveContactsRequestCount("*19012*", now.minus(Duration.ofDays(10)));
+            assertEquals(0, expiredRequestsSweeper.sweep(now));
+            assertNotNull(contactsRequestCountRepository.findBySimlarId("*19012*"));
+        } finally {
+            schedulerLockRepository.save(new SchedulerLock("expired_requests_sweeper", now, "other node"));
+        }
+
+        assertEquals(1, expiredRequestsSweeper.sweep(now));
+        assertNull(contactsRequestCountRepository.findBySimlarId("*19012*"));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.twilio;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.simlar.simlarserver.SimlarServer;
+import org.simlar.simlarserver.data.TwilioRequestType;
+import org.simlar.simlarserver.database.models.SmsProviderLog;
+import org.simlar.simlarserver.database.repositories.SmsProviderLogRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = SimlarServer.class, properties = {
+        "twilio.callback.writer.enabled = true",
+        "twilio.callback.writer.queueCapacity = 3",
+        "twilio.callback.writer.flushInterval = 1h"
+})
+public final class TwilioCallbackWriterTest {
+    @Autowired
+    private TwilioCallbackWriter twilioCallbackWriter;
+
+    @Autowired
+    private SmsProviderLogRepository smsProviderLogRepository;
+
+    @Test
+    public void testCoalesceAndWrite() {
+        smsProviderLogRepository.save(new SmsProviderLog(TwilioRequestType.SMS, "+15005550101", "writerSid1", "queued", "sms 1"));
+        smsProviderLogRepository.save(new SmsProviderLog(TwilioRequestType.SMS, "+15005550102", "writerSid2", "queued", "sms 2"));
+
+        assertTrue(twilioCallbackWriter.offer(new TwilioCallbackWriter.Callback("writerSid1", Instant.now(), "sent", null)));
+        assertTrue(twilioCallbackWriter.offer(new TwilioCallbackWriter.Callback("writerSid2", Instant.now(), "undelivered", "30009 - Missing segment")));
+        assertTrue(twilioCallbackWriter.offer(new TwilioCallbackWriter.Callback("writerSid1", Instant.now(), "delivered", null)));
+        assertFalse(twilioCallbackWriter.offer(new TwilioCallbackWriter.Callback("writerSid1", Instant.now(), "read", null)));
+
+        assertEquals("queued", smsProviderLogRepository.findBySessionId("writerSid1").getStatus());
+        twilioCallbackWriter.flush();
+
+        final SmsProviderLog first = smsProviderLogRepository.findBySessionId("writerSid1");
+        assertEquals("delivered", first.getStatus());
+        assertNull(first.getError());
+        assertNotNull(first.getCallbackTimestamp());
+
+        final SmsProviderLog second = smsProviderLogRepository.findBySessionId("writerSid2");
+        assertEquals("undelivered", second.getStatus());
+        assertEquals("30009 - Missing segment", second.getError());
+        assertNotNull(second.getCallbackTimestamp());
+
+        assertTrue(twilioCallbackWriter.offer(new TwilioCallbackWriter.Callback("writerSid1", Instant.now(), "read", null)));
+        twilioCallbackWriter.flush();
+        assertEquals("read", smsProviderLogRepository.findBySessionId("writerSid1").getStatus());
+    }
+
+    @Test
+    public void testUnknownSession() {
+        assertTrue(twilioCallbackWriter.offer(new TwilioCallbackWriter.Callback("unknownWriterSid", Instant.now(), "sent", null)));
+        twilioCallbackWriter.flush();
+        assertNull(smsProviderLogRepository.findBySessionId("unknownWriterSid"));
+    }
+
+    @Test
+    public void testFailingBatchIsWrittenOneByOne() {
+        smsProviderLogRepository.save(new SmsProviderLog(TwilioRequestType.SMS, "+15005550103", "writerSid3", "queued", "sms 3"));
+        smsProviderLogRepository.save(new SmsProviderLog(TwilioRequestType.SMS, "+15005550104", "writerSid4", "queued", "sms 4"));
+
+        assertTrue(twilioCallbackWriter.offer(new TwilioCallbackWriter.Callback("writerSid3", Instant.now(), "delivered", null)));
+        assertTrue(twilioCallbackWriter.offer(new TwilioCallbackWriter.Callback("writerSid4", Instant.now(), "x".repeat(100), null)));
+        twilioCallbackWriter.flush();
+
+        assertEquals("delivered", smsProviderLogRepository.findBySessionId("writerSid3").getStatus());
+        assertEquals("queued", smsProviderLogRepository.findBySessionId("writerSid4").getStatus());
+    }
+
+    @Test
+    public void testOlderCallbackDoesNotOverwriteNewer() {
+        final long id = smsProviderLogRepository.save(new SmsProviderLog(TwilioRequestType.SMS, "+15005550105", "writerSid5", "queued", "sms 5")).getId();
+        final Instant now = Instant.now();
+
+        assertTrue(twilioCallbackWriter.offer(new TwilioCallbackWriter.Callback("writerSid5", now.minusSeconds(10), "sent", null)));
+        assertEquals(1, smsProviderLogRepository.updateCallback(id, now, "delivered", null));
+        twilioCallbackWriter.flush();
+        assertEquals("delivered", smsProviderLogRepository.findBySessionId("writerSid5").getStatus());
+
+        assertEquals(0, smsProviderLogRepository.updateCallback(id, now.minusSeconds(5), "sent", null));
+        assertEquals("delivered", smsProviderLogRepository.findBySessionId("writerSid5").getStatus());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.services.twilio;
+
+import org.junit.Test;
+import org.simlar.simlarserver.data.TwilioRequestType;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class TwilioSessionsTest {
+    private static final TwilioSessions.Session SESSION_1 = new TwilioSessions.Session(1L, TwilioRequestType.SMS, "+15005550006", "sms");
+    private static final TwilioSessions.Session SESSION_2 = new TwilioSessions.Session(2L, TwilioRequestType.CALL, "+15005550006", "call");
+    private static final TwilioSessions.Session SESSION_3 = new TwilioSessions.Session(3L, TwilioRequestType.SMS, "+15005550007", "sms");
+
+    @Test
+    public void testGet() {
+        final TwilioSessions sessions = new TwilioSessions(10, Duration.ofMinutes(1));
+
+        sessions.put("sid1", SESSION_1);
+        sessions.put("sid2", SESSION_2);
+        assertEquals(SESSION_1, sessions.get("sid1"));
+        assertEquals(SESSION_1, sessions.get("sid1"));
+        assertEquals(SESSION_2, sessions.get("sid2"));
+        assertNull(sessions.get("sid3"));
+    }
+
+    @Test
+    public void testEvictOldest() {
+        final TwilioSessions sessions = new TwilioSessions(2, Duration.ofMinutes(1));
+
+        sessions.put("sid1", SESSION_1);
+        sessions.put("sid2", SESSION_2);
+        sessions.put("sid3", SESSION_3);
+        assertEquals(2, sessions.size());
+        assertNull(sessions.get("sid1"));
+        assertEquals(SESSION_3, sessions.get("sid3"));
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        final TwilioSessions sessions = new TwilioSessions(10, Duration.ofMillis(10));
+
+        sessions.put("sid1", SESSION_1);
+        Thread.sleep(20);
+        assertNull(sessions.get("sid1"));
+
+        sessions.put("sid2", SESSION_2);
+        Thread.sleep(20);
+        sessions.put("sid3", SESSION_3);
+        assertEquals(1, sessions.size());
+    }
+}
@@ -30,7 +30,9 @@ import org.simlar.simlarserver.data.TwilioRequestType;
 import org.simlar.simlarserver.database.models.SmsProviderLog;
 import org.simlar.simlarserver.database.repositories.SmsProviderLogRepository;
 import org.simlar.simlarserver.services.SharedSettings;
-import org.simlar.simlarserver.services.smsservice.SmsService;
+import org.simlar.simlarserver.services.smsservice.SmsProvider;
+import org.simlar.simlarserver.services.smsservice.SmsProviderResult;
+import org.simlar.simlarserver.utils.certificatepinning.HttpClientRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -58,20 +60,26 @@ public final class TwilioSmsServiceTest {
     @Autowired
     private SmsProviderLogRepository smsProviderLogRepository;
 
+    @Autowired
+    private HttpClientRegistry httpClientRegistry;
+
+    @Autowired
+    private TwilioCallbackWriter twilioCallbackWriter;
+
     @Before
     public void setup() {
         assumeTrue("This test needs a Twilio configuration with Twilio test credentials", twilioSettings.isConfigured());
         assertEquals("Twilio test credentials", "+15005550006", twilioSettings.smsSourceNumber());
 
         sharedSettings = new SharedSettings("sip.simlar.org", (short)6161);
-        twilioSmsService = new TwilioSmsService(sharedSettings, twilioSettings, smsProviderLogRepository);
+        twilioSmsService = new TwilioSmsService(sharedSettings, twilioSettings, smsProviderLogRepository, twilioCallbackWriter, httpClientRegistry);
     }
 
     @Test
     public void testSendSmsSuccess() {
         final String telephoneNumber = "+15005550006";
         final String message         = "Test success";
-        assertTrue(twilioSmsService.sendSms(telephoneNumber, message));
+        assertEquals(SmsProviderResult.SENT, twilioSmsService.sendSms(telephoneNumber, message));
         final SmsProviderLog logEntry = smsProviderLogRepository.findByTelephoneNumber(telephoneNumber);
         assertNotNull(logEntry);
         assertAlmostEquals("sms success", new SmsProviderLog(TwilioRequestType.SMS, telephoneNumber, "xxx", "queued", message), logEntry);
@@ -83,9 +91,9 @@ public final class TwilioSmsServiceTest {
         final String message         = "Test not configured";
 
         final TwilioSettings settings = new TwilioSettings(null, null, null, null, null);
-        final SmsService service = new TwilioSmsService(sharedSettings, settings, smsProviderLogRepository);
+        final SmsProvider service = new TwilioSmsService(sharedSettings, settings, smsProviderLogRepository, twilioCallbackWriter, httpClientRegistry);
 
-        assertFalse(service.sendSms(telephoneNumber, message));
+        assertEquals(SmsProviderResult.FAILED, service.sendSms(telephoneNumber, message));
         assertAlmostEquals(message,
                 new SmsProviderLog(TwilioRequestType.SMS, telephoneNumber, null, "SimlarServerException", "twilio not configured", message),
                 smsProviderLogRepository.findByTelephoneNumber(telephoneNumber));
@@ -107,8 +115,8 @@ public final class TwilioSmsServiceTest {
         when(mockedSettings.callbackUser()).thenReturn("user");
         when(mockedSettings.callbackPassword()).thenReturn("password");
 
-        final SmsService service = new TwilioSmsService(sharedSettings, mockedSettings, smsProviderLogRepository);
-        assertFalse(service.sendSms(telephoneNumber, message));
+        final SmsProvider service = new TwilioSmsService(sharedSettings, mockedSettings, smsProviderLogRepository, twilioCallbackWriter, httpClientRegistry);
+        assertEquals(SmsProviderResult.FAILED, service.sendSms(telephoneNumber, message));
         assertAlmostEqualsContainsError(message,
                 new SmsProviderLog(TwilioRequestType.SMS, telephoneNumber, null, "SimlarServerException", "UnresolvedAddressException: ", message),
                 smsProviderLogRepository.findByTelephoneNumber(telephoneNumber));
@@ -118,7 +126,7 @@ public final class TwilioSmsServiceTest {
     public void testSendSmsInvalidNumber() {
         final String telephoneNumber = "+15005550001";
         final String message         = "Test invalid number";
-        assertFalse(twilioSmsService.sendSms(telephoneNumber, message));
+        assertEquals(SmsProviderResult.REJECTED, twilioSmsService.sendSms(telephoneNumber, message));
         assertAlmostEquals(message,
                 new SmsProviderLog(TwilioRequestType.SMS, telephoneNumber, null, "400", "null - Invalid 'To' Phone Number: +1500555XXXX", message),
                 smsProviderLogRepository.findByTelephoneNumber(telephoneNumber));
@@ -128,7 +136,7 @@ public final class TwilioSmsServiceTest {
     public void testSendSmsNotReachableNumber() {
         final String telephoneNumber = "+15005550002";
         final String message         = "Number not reachable";
-        assertFalse(twilioSmsService.sendSms(telephoneNumber, message));
+        assertEquals(SmsProviderResult.REJECTED, twilioSmsService.sendSms(telephoneNumber, message));
         assertAlmostEquals(message,
                 new SmsProviderLog(TwilioRequestType.SMS, telephoneNumber, null, "400", "null - Message cannot be sent with the current combination of 'To' (+1500555XXXX) and/or 'From' (+15005550006) parameters", message),
                 smsProviderLogRepository.findByTelephoneNumber(telephoneNumber));
@@ -156,11 +164,21 @@ public final class TwilioSmsServiceTest {
                 smsProviderLogRepository.findByTelephoneNumber(telephoneNumber));
     }
 
+    @Test
+    public void testIsInvalidTelephoneNumberError() {
+        assertTrue(TwilioSmsService.isInvalidTelephoneNumberError("{\"code\": 21211, \"message\": \"Invalid 'To' Phone Number\", \"status\": 400}"));
+        assertFalse(TwilioSmsService.isInvalidTelephoneNumberError("{\"code\": 21212, \"message\": \"Invalid 'From' Phone Number\", \"status\": 400}"));
+        assertFalse(TwilioSmsService.isInvalidTelephoneNumberError("{\"code\": 21608, \"message\": \"Trial account restriction\", \"status\": 400}"));
+        assertFalse(TwilioSmsService.isInvalidTelephoneNumberError("{\"status\": 400}"));
+        assertFalse(TwilioSmsService.isInvalidTelephoneNumberError("no json"));
+        assertFalse(TwilioSmsService.isInvalidTelephoneNumberError(null));
+    }
+
     @Test
     public void testCallSuccess() {
         final String telephoneNumber = "+15005550006";
         final String message         = "Welcome to simlar! Your registration code is 123456";
 
-        assertTrue(twilioSmsService.call(telephoneNumber, message));
+        assertEquals(SmsProviderResult.SENT, twilioSmsService.call(telephoneNumber, message));
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.simlarserver.utils.certificatepinning;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public final class HttpClientRegistryTest {
+    private static HttpClientRegistry createRegistry(final int maxClients) {
+        return new HttpClientRegistry(maxClients, Duration.ofSeconds(1), Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void testReuse() {
+        try (final HttpClientRegistry registry = createRegistry(4)) {
+            assertSame(registry.getRestTemplate(null), registry.getRestTemplate(List.of()));
+            assertSame(registry.getRestTemplate(List.of("sha256/a=", "sha256/b=")), registry.getRestTemplate(List.of("sha256/b=", "sha256/a=")));
+            assertSame(registry.getRestTemplate(null), registry.getRestTemplate(null, "TLSv1.3"));
+            assertSame(registry.getRequestFactory(null), registry.getRequestFactory(List.of()));
+            assertEquals(2, registry.size());
+        }
+    }
+
+    @Test
+    public void testDifferentKeys() {
+        try (final HttpClientRegistry registry = createRegistry(4)) {
+            assertNotSame(registry.getRestTemplate(null), registry.getRestTemplate(List.of("sha256/a=")));
+            assertNotSame(registry.getRestTemplate(null), registry.getRestTemplate(null, "TLSv1.2"));
+            assertEquals(3, registry.size());
+        }
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        try (final HttpClientRegistry registry = createRegistry(2)) {
+            final Object first = registry.getRestTemplate(List.of("sha256/a="));
+            final Object second = registry.getRestTemplate(List.of("sha256/b="));
+            assertSame(first, registry.getRestTemplate(List.of("sha256/a=")));
+
+            registry.getRestTemplate(List.of("sha256/c="));
+            assertEquals(2, registry.size());
+            assertSame(first, registry.getRestTemplate(List.of("sha256/a=")));
+            assertNotSame(second, registry.getRestTemplate(List.of("sha256/b=")));
+        }
+    }
+}
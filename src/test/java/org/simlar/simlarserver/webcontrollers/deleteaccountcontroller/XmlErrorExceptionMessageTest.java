@@ -30,6 +30,7 @@ import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorFailedToTriggerCallExc
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorNoCallSessionException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorNoIpException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorRequestedTooManyContactsException;
+import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorTooManyPushNotificationCalleesException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorUnknownApplePushIdException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorUnknownPushIdTypeException;
 import org.simlar.simlarserver.xmlerrorexceptions.XmlErrorUnknownStructureException;
@@ -71,6 +72,7 @@ public final class XmlErrorExceptionMessageTest {
             XmlErrorNoCallSessionException.class,
             XmlErrorNoIpException.class,
             XmlErrorRequestedTooManyContactsException.class,
+            XmlErrorTooManyPushNotificationCalleesException.class,
             XmlErrorUnknownApplePushIdException.class,
             XmlErrorUnknownPushIdTypeException.class,
             XmlErrorUnknownStructureException.class,